@@ -0,0 +1,221 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class AnalysisCache {
+    private static final byte[] MAGIC = {'L', 'X', 'C', '5'}; // bump when the lexer or parser output changes
+    private static final String SUFFIX = ".lxc";
+    private static final Token[] TOKENS = Token.values();
+
+    private final Path directory;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true); // key -> size, least recently used first
+    private long totalBytes;
+
+    public static class Analysis {
+        private final List<Lexeme> lexemes;
+        private final Node ast;
+        private final IdentifierIndex identifiers;
+
+        Analysis(List<Lexeme> lexemes, Node ast, IdentifierIndex identifiers) {
+            this.lexemes = lexemes;
+            this.ast = ast;
+            this.identifiers = identifiers;
+        }
+
+        public List<Lexeme> getLexemes() {
+            return lexemes;
+        }
+
+        public Node getAST() {
+            return ast;
+        }
+
+        public IdentifierIndex getIdentifierIndex() { // null if the entry was stored without one
+            return identifiers;
+        }
+    }
+
+    public AnalysisCache(Path directory, long maxBytes) throws IOException {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).collect(Collectors.toList());
+        }
+        Map<Path, FileTime> accessTimes = new LinkedHashMap<>();
+        for (Path file : files) {
+            accessTimes.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort(Comparator.comparing(accessTimes::get)); // the modification time doubles as the last access time
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long size = Files.size(file);
+            entries.put(name.substring(0, name.length() - SUFFIX.length()), size);
+            totalBytes += size;
+        }
+    }
+
+    public Analysis analyze(Path file, Lexical_Analyzer analyzer) throws IOException, LexicalException, Parser.ParserException {
+        byte[] content = Files.readAllBytes(file);
+        Analysis cached = get(content);
+        if (cached != null) {
+            return cached;
+        }
+        List<Lexeme> lexemes = analyzer.analyzeSource(new String(content, StandardCharsets.UTF_8)).asLexemes();
+        Parser parser = new Parser(lexemes);
+        parser.setIdentifierIndex(new IdentifierIndex());
+        parser.parse();
+        put(content, lexemes, parser.getAST(), parser.getIdentifierIndex());
+        return new Analysis(lexemes, parser.getAST(), parser.getIdentifierIndex());
+    }
+
+    public Analysis get(byte[] content) throws IOException { // the lock only covers the LRU bookkeeping, entries are mapped and decoded in parallel
+        String key = key(content);
+        synchronized (this) {
+            if (entries.get(key) == null) {
+                return null;
+            }
+        }
+        Path file = directory.resolve(key + SUFFIX);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Analysis analysis = read(buffer);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return analysis;
+        } catch (IOException | RuntimeException e) { // missing, corrupt or evicted since the lookup, drop it
+            synchronized (this) {
+                remove(key);
+            }
+            return null;
+        }
+    }
+
+    public void put(byte[] content, List<Lexeme> lexemes, Node ast) throws IOException { // no identifier index, a hit returns null for it rather than an empty one
+        put(content, lexemes, ast, null);
+    }
+
+    public void put(byte[] content, List<Lexeme> lexemes, Node ast, IdentifierIndex identifiers) throws IOException { // written to a temporary file outside the lock, moved into place under it
+        String key = key(content);
+        Path file = directory.resolve(key + SUFFIX);
+        Path temporary = Files.createTempFile(directory, key, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+                out.write(MAGIC);
+                writeVarInt(out, lexemes.size());
+                for (Lexeme lexeme : lexemes) {
+                    out.writeByte(lexeme.getToken().ordinal());
+                    writeVarInt(out, lexeme.getLineNumber());
+                    writeVarInt(out, lexeme.getColumnNumber());
+                    byte[] value = lexeme.getValue().getBytes(StandardCharsets.UTF_8);
+                    writeVarInt(out, value.length);
+                    out.write(value);
+                }
+                out.flush();
+                new AstWriter(channel, AstWriter.Format.BINARY).write(ast);
+                out.writeBoolean(identifiers != null); // the AST writer went straight to the channel, so this lands after it
+                if (identifiers != null) {
+                    identifiers.write(out);
+                }
+                out.flush();
+            }
+            long size = Files.size(temporary);
+            synchronized (this) { // eviction deletes files under the lock, so it can't race the move
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Long previous = entries.put(key, size);
+                totalBytes += size - (previous != null ? previous : 0);
+                evict();
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private void evict() throws IOException { // callers hold the lock
+        Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            Files.deleteIfExists(directory.resolve(entry.getKey() + SUFFIX));
+            totalBytes -= entry.getValue();
+            eldest.remove();
+        }
+    }
+
+    private void remove(String key) throws IOException { // callers hold the lock
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        Files.deleteIfExists(directory.resolve(key + SUFFIX));
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static Analysis read(MappedByteBuffer buffer) throws IOException {
+        for (byte expected : MAGIC) {
+            if (buffer.get() != expected) {
+                throw new IOException("Stale cache entry");
+            }
+        }
+        int count = AstReader.readVarInt(buffer);
+        List<Lexeme> lexemes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Token token = TOKENS[buffer.get()];
+            int lineNumber = AstReader.readVarInt(buffer);
+            int columnNumber = AstReader.readVarInt(buffer);
+            String value = AstReader.readString(buffer, AstReader.readVarInt(buffer));
+            lexemes.add(new Lexeme(token, value, lineNumber, columnNumber));
+        }
+        Node ast = AstReader.readBinary(buffer);
+        IdentifierIndex identifiers = buffer.get() != 0 ? IdentifierIndex.read(buffer, new SymbolTable()) : null;
+        return new Analysis(lexemes, ast, identifiers);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static String key(byte[] content) { // content hash, so an edited file never hits a stale entry
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+public class AnalysisClient implements Closeable { // talks to a running AnalysisDaemon, the analysis itself happens in the daemon's JVM
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    public static class Response {
+        private final boolean success;
+        private final String body;
+
+        Response(boolean success, String body) {
+            this.success = success;
+            this.body = body;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public String getBody() { // the result, or the error message when the request failed
+            return body;
+        }
+    }
+
+    public AnalysisClient() throws IOException {
+        this(AnalysisDaemon.DEFAULT_PORT);
+    }
+
+    public AnalysisClient(int port) throws IOException {
+        this(port, AnalysisDaemon.defaultTokenFile(port));
+    }
+
+    public AnalysisClient(int port, Path tokenFile) throws IOException { // authenticates with the token the daemon wrote to tokenFile
+        String token = new String(Files.readAllBytes(tokenFile), StandardCharsets.US_ASCII).trim();
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        try {
+            socket.setTcpNoDelay(true);
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+            Response response = send("AUTH", token);
+            if (!response.isSuccess()) {
+                throw new IOException(response.getBody());
+            }
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    public Response send(String command, String source) throws IOException { // command is LEX, PARSE, CHECK, PING or SHUTDOWN
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        out.write((command + " " + bytes.length + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(bytes);
+        out.flush();
+        String header = AnalysisDaemon.readLine(in);
+        if (header == null) {
+            throw new EOFException("Daemon closed the connection");
+        }
+        int space = header.indexOf(' ');
+        int length = Integer.parseInt(header.substring(space + 1));
+        String body = new String(AnalysisDaemon.readFully(in, length), StandardCharsets.UTF_8);
+        return new Response(header.substring(0, space).equals("OK"), body);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: AnalysisClient <lex|parse|check> <file> [-p port] [-k token file] [-r repeats]");
+            return;
+        }
+        String command = args[0].toUpperCase();
+        String source = new String(Files.readAllBytes(Paths.get(args[1])), StandardCharsets.UTF_8);
+        int port = AnalysisDaemon.DEFAULT_PORT;
+        int repeats = 1;
+        Path tokenFile = null;
+        for (int i = 2; i < args.length; i++) { // -r sends the file again and again and reports the latency
+            if (args[i].equals("-p")) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-k")) {
+                tokenFile = Paths.get(args[++i]);
+            } else if (args[i].equals("-r")) {
+                repeats = Integer.parseInt(args[++i]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        try (AnalysisClient client = new AnalysisClient(port, tokenFile != null ? tokenFile : AnalysisDaemon.defaultTokenFile(port))) {
+            long[] nanos = new long[repeats];
+            Response response = null;
+            for (int i = 0; i < repeats; i++) {
+                long start = System.nanoTime();
+                response = client.send(command, source);
+                nanos[i] = System.nanoTime() - start;
+            }
+            if (response.isSuccess()) {
+                System.out.print(response.getBody());
+            } else {
+                System.err.println(response.getBody());
+            }
+            if (repeats > 1) {
+                Arrays.sort(nanos);
+                System.err.printf("%d requests: p50 %.3f ms, p99 %.3f ms, max %.3f ms%n", repeats,
+                        nanos[repeats / 2] / 1e6, nanos[Math.min(repeats - 1, (int) Math.ceil(repeats * 0.99) - 1)] / 1e6, nanos[repeats - 1] / 1e6);
+            }
+            if (!response.isSuccess()) {
+                System.exit(1);
+            }
+        }
+    }
+}
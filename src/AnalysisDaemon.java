@@ -0,0 +1,360 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AnalysisDaemon implements Closeable { // keeps a warm JVM on a loopback port so small files don't pay start-up and JIT every run
+    // trust model: only processes that can read the token file, written owner-only, may use or stop the daemon;
+    // other local users can connect to the port but are dropped after the first frame, and can't make it buffer more than a token
+    static final int DEFAULT_PORT = 4060;
+    static final int MAX_REQUEST_BYTES = 64 << 20;
+    static final int MAX_BYTES_IN_FLIGHT = 256 << 20; // request bodies read and not yet answered, over all connections; analysis memory grows with them
+    private static final int MAX_TOKEN_BYTES = 256;
+    static final int MAX_RESPONSE_CHARS = 32 << 20; // the indented AST dump grows with depth squared, a deep form must not exhaust the heap
+    private static final String WARMUP_SOURCE = "(define (fibonacci n)\n"
+            + "( let fib ((prev 0) (cur 1) (i 0))\n"
+            + "( if (= i n) cur (fib cur (+ prev cur) (+ i 1)))))\n"
+            + "(define greeting \"hello, world\") ; a comment\n"
+            + "(define pi 3.14159)\n"
+            + "(define flag #t)\n";
+
+    private final ServerSocket server;
+    private final ThreadPoolExecutor connections;
+    private final Semaphore bytesInFlight = new Semaphore(MAX_BYTES_IN_FLIGHT);
+    private final byte[] token;
+    private final Path tokenFile;
+    private volatile boolean closed;
+
+    public AnalysisDaemon(int port, int maxConnections) throws IOException { // port 0 picks a free one, the token goes to defaultTokenFile of the bound port
+        this(port, maxConnections, null);
+    }
+
+    public AnalysisDaemon(int port, int maxConnections, Path tokenFile) throws IOException {
+        this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress()); // never reachable from another host
+        this.tokenFile = tokenFile != null ? tokenFile : defaultTokenFile(server.getLocalPort());
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        StringBuilder hex = new StringBuilder(random.length * 2);
+        for (byte b : random) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        this.token = hex.toString().getBytes(StandardCharsets.US_ASCII);
+        try {
+            writeToken(this.tokenFile, token);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        AtomicInteger threads = new AtomicInteger();
+        this.connections = new ThreadPoolExecutor(0, maxConnections, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), task -> {
+            Thread thread = new Thread(task, "analysis-daemon-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }); // one thread per open connection, idle threads keep their workspace until they time out
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    public Path getTokenFile() {
+        return tokenFile;
+    }
+
+    static Path defaultTokenFile(int port) {
+        return Paths.get(System.getProperty("user.home"), ".analysis-daemon", "token-" + port);
+    }
+
+    private static void writeToken(Path file, byte[] token) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "token", ".tmp"); // created owner read/write only where the file system has POSIX permissions
+        try {
+            Files.write(temporary, token);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    public void serve() throws IOException { // accepts until closed, each connection is served on its own thread
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (SocketException e) {
+                if (closed) {
+                    return;
+                }
+                throw e;
+            }
+            try {
+                connections.execute(() -> handle(socket));
+            } catch (RejectedExecutionException e) { // every thread is busy with another client
+                try (Socket busy = socket) {
+                    OutputStream out = busy.getOutputStream();
+                    writeFrame(out, "ERROR", "Too many connections");
+                    out.flush();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        connections.shutdownNow();
+        Files.deleteIfExists(tokenFile);
+    }
+
+    private void handle(Socket socket) {
+        try (Socket connection = socket) {
+            connection.setTcpNoDelay(true); // replies are small and written in one flush
+            InputStream in = new BufferedInputStream(connection.getInputStream());
+            OutputStream out = new BufferedOutputStream(connection.getOutputStream());
+            String header;
+            boolean authenticated = false;
+            while ((header = readLine(in)) != null) { // requests on one connection are answered in order, the first must be AUTH
+                int space = header.indexOf(' ');
+                String command = space < 0 ? header : header.substring(0, space);
+                int length = space < 0 ? 0 : Integer.parseInt(header.substring(space + 1));
+                if (length < 0 || length > (authenticated ? MAX_REQUEST_BYTES : MAX_TOKEN_BYTES)) {
+                    writeFrame(out, "ERROR", authenticated ? "Request too large" : "Not authorized");
+                    out.flush();
+                    return;
+                }
+                if (!bytesInFlight.tryAcquire(length)) { // the body is left unread, so the connection can't go on
+                    writeFrame(out, "ERROR", "Too many bytes in flight, try again later");
+                    out.flush();
+                    return;
+                }
+                try {
+                    byte[] body = readFully(in, length);
+                    if (!authenticated) {
+                        if (!command.equals("AUTH") || !MessageDigest.isEqual(body, token)) { // constant time, the token never leaks through timing
+                            writeFrame(out, "ERROR", "Not authorized");
+                            out.flush();
+                            return;
+                        }
+                        authenticated = true;
+                        writeFrame(out, "OK", "");
+                        out.flush();
+                        continue;
+                    }
+                    if (command.equals("SHUTDOWN")) {
+                        writeFrame(out, "OK", "");
+                        out.flush();
+                        close();
+                        return;
+                    }
+                    respond(command, new String(body, StandardCharsets.UTF_8), out);
+                    out.flush();
+                } finally {
+                    bytesInFlight.release(length);
+                }
+            }
+        } catch (IOException | NumberFormatException e) { // the client went away or spoke something else, drop the connection
+        }
+    }
+
+    static void respond(String command, String source, OutputStream out) throws IOException {
+        String status = "OK";
+        String body;
+        try {
+            body = execute(command, source);
+        } catch (LexicalException e) {
+            status = "ERROR";
+            body = e.getMessage();
+        } catch (Parser.ParserException e) {
+            status = "ERROR";
+            body = "Parsing Error: " + e.getMessage();
+        } catch (RuntimeException | StackOverflowError e) { // an unknown command or a failure in the analysis, the connection stays usable
+            status = "ERROR";
+            body = e.getMessage() != null ? e.getMessage() : e.toString();
+        }
+        writeFrame(out, status, body);
+    }
+
+    static String execute(String command, String source) throws LexicalException, Parser.ParserException { // same output for the same source, whichever thread runs it
+        AnalysisWorkspace workspace = AnalysisWorkspace.current(); // reused by every request on this thread
+        StringBuilder result = new StringBuilder();
+        switch (command) {
+            case "PING":
+                break;
+            case "LEX": // line:column TOKEN value, one lexeme per line
+                TokenBuffer tokens = workspace.analyze(source);
+                for (int i = 0; i < tokens.size(); i++) {
+                    result.append(tokens.getLineNumber(i)).append(':').append(tokens.getColumnNumber(i)).append(' ')
+                            .append(tokens.getToken(i).name()).append(' ').append(tokens.getText(i)).append('\n');
+                }
+                break;
+            case "PARSE": // the AST dump Main prints after a successful parse
+                try {
+                    new AstWriter(new BoundedWriter(result)).write(workspace.parse(source));
+                } catch (IOException e) { // only the size limit fails, nothing is written anywhere else
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+                break;
+            case "CHECK": // every lexical and syntax error, one per line, nothing if the source is clean
+                List<Diagnostic> diagnostics = workspace.check(source);
+                for (Diagnostic diagnostic : diagnostics) {
+                    result.append(diagnostic).append('\n');
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command " + command);
+        }
+        return result.toString();
+    }
+
+    private static class BoundedWriter extends Writer { // appends to the reply, failing once it passes MAX_RESPONSE_CHARS
+        private final StringBuilder target;
+
+        BoundedWriter(StringBuilder target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            if (target.length() + length > MAX_RESPONSE_CHARS) {
+                throw new IOException("Response larger than " + MAX_RESPONSE_CHARS + " chars");
+            }
+            target.append(chars, offset, length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void warmUp(String source, int iterations) { // runs every command until the hot paths are compiled
+        ByteArrayOutputStream discard = new ByteArrayOutputStream();
+        for (int i = 0; i < iterations; i++) {
+            for (String command : new String[]{"LEX", "PARSE", "CHECK"}) {
+                try {
+                    respond(command, source, discard);
+                } catch (IOException e) { // a ByteArrayOutputStream doesn't fail
+                    throw new IllegalStateException(e);
+                }
+            }
+            discard.reset();
+        }
+    }
+
+    static void writeFrame(OutputStream out, String status, String body) throws IOException { // "STATUS length\n" then the UTF-8 body
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        out.write((status + " " + bytes.length + "\n").getBytes(StandardCharsets.US_ASCII));
+        out.write(bytes);
+    }
+
+    static String readLine(InputStream in) throws IOException { // a frame header, null at a clean end of stream
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                if (line.length() == 0) {
+                    return null;
+                }
+                throw new EOFException("Connection closed inside a header");
+            }
+            if (line.length() == 64) {
+                throw new IOException("Header too long");
+            }
+            line.append((char) b);
+        }
+        return line.toString();
+    }
+
+    static byte[] readFully(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int count = in.read(bytes, read, length - read);
+            if (count < 0) {
+                throw new EOFException("Connection closed inside a frame");
+            }
+            read += count;
+        }
+        return bytes;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        int maxConnections = 64; // connections mostly sit idle between requests, so this is not tied to the cores
+        int warmupIterations = 0;
+        String warmupSource = WARMUP_SOURCE;
+        boolean exitAfterWarmup = false;
+        Path tokenFile = null;
+        for (int i = 0; i < args.length; i++) { // -p port, -c max connections, -w warm-up iterations, -f warm-up file, -k token file, --exit-after-warmup
+            switch (args[i]) {
+                case "-p":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-k":
+                    tokenFile = Paths.get(args[++i]);
+                    break;
+                case "-c":
+                    maxConnections = Integer.parseInt(args[++i]);
+                    break;
+                case "-w":
+                    warmupIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-f":
+                    warmupSource = new String(Files.readAllBytes(Paths.get(args[++i])), StandardCharsets.UTF_8);
+                    break;
+                case "--exit-after-warmup": // with -XX:DumpLoadedClassList=daemon.lst, records the classes for an AppCDS archive
+                    exitAfterWarmup = true;
+                    break;
+                default:
+                    System.err.println("Usage: AnalysisDaemon [-p port] [-c max connections] [-w warm-up iterations] [-f warm-up file] [-k token file] [--exit-after-warmup]");
+                    System.err.println("Clients authenticate with the token written to the token file, ~/.analysis-daemon/token-<port> by default");
+                    System.err.println("AppCDS, with the classes in analyzer.jar (a class directory is refused):");
+                    System.err.println("  java -XX:DumpLoadedClassList=daemon.lst -cp analyzer.jar AnalysisDaemon -w 2000 --exit-after-warmup");
+                    System.err.println("  java -Xshare:dump -XX:SharedClassListFile=daemon.lst -XX:SharedArchiveFile=daemon.jsa -cp analyzer.jar");
+                    System.err.println("  java -XX:SharedArchiveFile=daemon.jsa -cp analyzer.jar AnalysisDaemon -w 2000");
+                    return;
+            }
+        }
+        long start = System.nanoTime();
+        warmUp(warmupSource, warmupIterations);
+        if (warmupIterations > 0) {
+            System.err.printf("Warmed up in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+        }
+        if (exitAfterWarmup) {
+            return;
+        }
+        try (AnalysisDaemon daemon = new AnalysisDaemon(port, maxConnections, tokenFile)) {
+            System.err.println("Listening on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + daemon.getPort() + ", token in " + daemon.getTokenFile());
+            daemon.serve();
+        }
+    }
+}
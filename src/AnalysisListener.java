@@ -0,0 +1,24 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+public interface AnalysisListener { // every callback is optional, analyzers skip all of this when no listener is set
+    default void sourceLexed(int characters, int[] tokenCounts, long nanos, long allocatedBytes) { // tokenCounts is indexed by Token.ordinal()
+    }
+
+    default void productionEntered(String production, int depth) {
+    }
+
+    default void productionExited(String production, long nanos) {
+    }
+
+    default void sourceParsed(Node ast, long nanos, long allocatedBytes) {
+    }
+
+    static long allocatedBytes() { // bytes allocated so far by the calling thread, -1 if the JVM can't tell
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,176 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class AnalysisMetrics implements AnalysisListener, AnalysisMetricsMXBean { // thread-safe, one instance can serve every analyzer and parser
+    private static final Token[] TOKENS = Token.values();
+
+    private final LongAdder characters = new LongAdder();
+    private final LongAdder lexingNanos = new LongAdder();
+    private final AtomicLongArray tokenCounts = new AtomicLongArray(TOKENS.length);
+    private final Map<String, LongAdder> productionCalls = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> productionNanos = new ConcurrentHashMap<>();
+    private final AtomicInteger maxNestingDepth = new AtomicInteger();
+    private final Map<String, LongAdder> nodeCounts = new ConcurrentHashMap<>();
+    private final LongAdder lexerAllocatedBytes = new LongAdder();
+    private final LongAdder parserAllocatedBytes = new LongAdder();
+
+    public ObjectName register() throws JMException { // attach to the platform MBean server, visible in jconsole or any JMX client
+        ObjectName name = new ObjectName("lexer:type=AnalysisMetrics,id=" + Integer.toHexString(System.identityHashCode(this)));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        return name;
+    }
+
+    @Override
+    public void sourceLexed(int characters, int[] tokenCounts, long nanos, long allocatedBytes) {
+        this.characters.add(characters);
+        lexingNanos.add(nanos);
+        for (int i = 0; i < tokenCounts.length; i++) {
+            if (tokenCounts[i] != 0) {
+                this.tokenCounts.addAndGet(i, tokenCounts[i]);
+            }
+        }
+        if (allocatedBytes > 0) {
+            lexerAllocatedBytes.add(allocatedBytes);
+        }
+    }
+
+    @Override
+    public void productionEntered(String production, int depth) {
+        if (depth > maxNestingDepth.get()) {
+            maxNestingDepth.accumulateAndGet(depth, Math::max);
+        }
+    }
+
+    @Override
+    public void productionExited(String production, long nanos) {
+        productionCalls.computeIfAbsent(production, key -> new LongAdder()).increment();
+        productionNanos.computeIfAbsent(production, key -> new LongAdder()).add(nanos);
+    }
+
+    @Override
+    public void sourceParsed(Node ast, long nanos, long allocatedBytes) {
+        Deque<Node> pending = new ArrayDeque<>(); // count nodes per label without recursion
+        if (ast != null) {
+            pending.push(ast);
+        }
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            nodeCounts.computeIfAbsent(node.getLabel(), key -> new LongAdder()).increment();
+            if (!node.isParsed()) { // counting must not force a lazy body to be parsed
+                continue;
+            }
+            for (Node child : node.getChildren()) {
+                pending.push(child);
+            }
+        }
+        if (allocatedBytes > 0) {
+            parserAllocatedBytes.add(allocatedBytes);
+        }
+    }
+
+    @Override
+    public long getCharacters() {
+        return characters.sum();
+    }
+
+    @Override
+    public long getLexemes() {
+        long lexemes = 0;
+        for (int i = 0; i < tokenCounts.length(); i++) {
+            lexemes += tokenCounts.get(i);
+        }
+        return lexemes;
+    }
+
+    @Override
+    public double getCharactersPerSecond() { // measured over time spent lexing, not wall time
+        long nanos = lexingNanos.sum();
+        return nanos == 0 ? 0 : getCharacters() / (nanos / 1e9);
+    }
+
+    @Override
+    public double getLexemesPerSecond() {
+        long nanos = lexingNanos.sum();
+        return nanos == 0 ? 0 : getLexemes() / (nanos / 1e9);
+    }
+
+    @Override
+    public Map<String, Long> getTokenCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (int i = 0; i < tokenCounts.length(); i++) {
+            if (tokenCounts.get(i) != 0) {
+                counts.put(TOKENS[i].name(), tokenCounts.get(i));
+            }
+        }
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getProductionCalls() {
+        return snapshot(productionCalls);
+    }
+
+    @Override
+    public Map<String, Long> getProductionNanos() { // inclusive of nested productions
+        return snapshot(productionNanos);
+    }
+
+    @Override
+    public int getMaxNestingDepth() {
+        return maxNestingDepth.get();
+    }
+
+    @Override
+    public Map<String, Long> getNodeCounts() {
+        return snapshot(nodeCounts);
+    }
+
+    @Override
+    public long getLexerAllocatedBytes() {
+        return lexerAllocatedBytes.sum();
+    }
+
+    @Override
+    public long getParserAllocatedBytes() {
+        return parserAllocatedBytes.sum();
+    }
+
+    @Override
+    public void reset() {
+        characters.reset();
+        lexingNanos.reset();
+        for (int i = 0; i < tokenCounts.length(); i++) {
+            tokenCounts.set(i, 0);
+        }
+        productionCalls.clear();
+        productionNanos.clear();
+        maxNestingDepth.set(0);
+        nodeCounts.clear();
+        lexerAllocatedBytes.reset();
+        parserAllocatedBytes.reset();
+    }
+
+    private static Map<String, Long> snapshot(Map<String, LongAdder> adders) {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : adders.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().sum());
+        }
+        return values;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d chars, %d lexemes (%.0f chars/sec, %.0f lexemes/sec), max depth %d, tokens %s, productions %s, nodes %s, allocated %d bytes lexing, %d bytes parsing",
+                getCharacters(), getLexemes(), getCharactersPerSecond(), getLexemesPerSecond(), getMaxNestingDepth(),
+                getTokenCounts(), getProductionCalls(), getNodeCounts(), getLexerAllocatedBytes(), getParserAllocatedBytes());
+    }
+}
@@ -0,0 +1,27 @@
+import java.util.Map;
+
+public interface AnalysisMetricsMXBean {
+    long getCharacters();
+
+    long getLexemes();
+
+    double getCharactersPerSecond();
+
+    double getLexemesPerSecond();
+
+    Map<String, Long> getTokenCounts();
+
+    Map<String, Long> getProductionCalls();
+
+    Map<String, Long> getProductionNanos();
+
+    int getMaxNestingDepth();
+
+    Map<String, Long> getNodeCounts();
+
+    long getLexerAllocatedBytes();
+
+    long getParserAllocatedBytes();
+
+    void reset();
+}
@@ -0,0 +1,46 @@
+import java.util.ArrayList;
+import java.util.List;
+
+public class AnalysisWorkspace { // a token buffer and parser that are reset between analyses instead of reallocated
+    private static final ThreadLocal<AnalysisWorkspace> CURRENT = ThreadLocal.withInitial(AnalysisWorkspace::new);
+
+    private final Lexical_Analyzer analyzer;
+    private final TokenBuffer tokens;
+    private final IterativeParser parser; // an explicit frame stack, so nesting depth can't overflow the thread's stack
+
+    public AnalysisWorkspace() {
+        this(new Lexical_Analyzer());
+    }
+
+    public AnalysisWorkspace(Lexical_Analyzer analyzer) { // the analyzer is stateless and may be shared, the workspace may not
+        this.analyzer = analyzer;
+        this.tokens = new TokenBuffer("", analyzer.getSymbolTable());
+        this.parser = new IterativeParser(tokens);
+    }
+
+    public static AnalysisWorkspace current() { // the calling thread's workspace, created on first use
+        return CURRENT.get();
+    }
+
+    public TokenBuffer analyze(CharSequence source) throws LexicalException { // the buffer is only valid until the next call
+        tokens.reset(source);
+        analyzer.analyzeSource(source, tokens);
+        return tokens;
+    }
+
+    public Node parse(CharSequence source) throws LexicalException, Parser.ParserException { // only the AST is newly allocated
+        analyze(source);
+        parser.reset(tokens);
+        parser.parse();
+        return parser.getAST();
+    }
+
+    public List<Diagnostic> check(CharSequence source) { // every lexical and syntax error, in the order they were found
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        tokens.reset(source);
+        analyzer.analyzeSource(source, tokens, diagnostics);
+        parser.reset(tokens);
+        diagnostics.addAll(parser.parseWithRecovery());
+        return diagnostics;
+    }
+}
@@ -0,0 +1,375 @@
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+public class AstArena {
+    public static final int NONE = -1;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final SymbolTable symbols;
+    private byte[] kinds;  // one slot per node, children are linked first-child / next-sibling
+    private int[] valueRefs; // index into strings, NONE, or -(symbol + 2) for interned identifiers
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] lastChildren;
+    private String[] strings = new String[INITIAL_CAPACITY];
+    private int stringCount;
+    private int size;
+    private int root = NONE;
+
+    public interface Visitor {
+        void enter(AstArena arena, int node);
+
+        default void exit(AstArena arena, int node) {
+        }
+    }
+
+    public AstArena() {
+        this(null);
+    }
+
+    public AstArena(SymbolTable symbols) {
+        this.symbols = symbols;
+        this.kinds = new byte[INITIAL_CAPACITY];
+        this.valueRefs = new int[INITIAL_CAPACITY];
+        this.firstChildren = new int[INITIAL_CAPACITY];
+        this.nextSiblings = new int[INITIAL_CAPACITY];
+        this.lastChildren = new int[INITIAL_CAPACITY];
+    }
+
+    public int addNode(NodeKind kind) {
+        return add(kind, NONE);
+    }
+
+    public int addNode(NodeKind kind, String value) {
+        if (value == null) {
+            return add(kind, NONE);
+        }
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, stringCount * 2);
+        }
+        strings[stringCount] = value;
+        return add(kind, stringCount++);
+    }
+
+    public int addSymbolNode(NodeKind kind, int symbol) {
+        return add(kind, -(symbol + 2));
+    }
+
+    private int add(NodeKind kind, int valueRef) {
+        if (size == kinds.length) {
+            grow();
+        }
+        kinds[size] = (byte) kind.ordinal();
+        valueRefs[size] = valueRef;
+        firstChildren[size] = NONE;
+        nextSiblings[size] = NONE;
+        lastChildren[size] = NONE;
+        return size++;
+    }
+
+    private void truncate(int size, int stringCount) { // drop the nodes added since, none of the nodes kept may link to them
+        Arrays.fill(strings, stringCount, this.stringCount, null);
+        this.size = size;
+        this.stringCount = stringCount;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        valueRefs = Arrays.copyOf(valueRefs, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        lastChildren = Arrays.copyOf(lastChildren, capacity);
+    }
+
+    public void appendChild(int parent, int child) {
+        if (lastChildren[parent] == NONE) {
+            firstChildren[parent] = child;
+        } else {
+            nextSiblings[lastChildren[parent]] = child;
+        }
+        lastChildren[parent] = child;
+    }
+
+    public void prependChild(int parent, int child) {
+        nextSiblings[child] = firstChildren[parent];
+        firstChildren[parent] = child;
+        if (lastChildren[parent] == NONE) {
+            lastChildren[parent] = child;
+        }
+    }
+
+    public void setRoot(int root) {
+        this.root = root;
+    }
+
+    public int getRoot() {
+        return root;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public NodeKind getKind(int node) {
+        return NodeKind.of(kinds[node]);
+    }
+
+    public String getValue(int node) {
+        int valueRef = valueRefs[node];
+        if (valueRef == NONE) {
+            return null;
+        }
+        return valueRef >= 0 ? strings[valueRef] : symbols.name(-valueRef - 2);
+    }
+
+    public int getSymbol(int node) { // -1 unless the value is an interned identifier
+        int valueRef = valueRefs[node];
+        return valueRef < NONE ? -valueRef - 2 : -1;
+    }
+
+    public int getFirstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    public void walk(Visitor visitor) { // depth-first, without recursion
+        if (root == NONE) {
+            return;
+        }
+        int[] stack = new int[16];
+        int depth = 0;
+        int node = root;
+        while (true) {
+            visitor.enter(this, node);
+            if (firstChildren[node] != NONE) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                node = firstChildren[node];
+                continue;
+            }
+            visitor.exit(this, node);
+            while (nextSiblings[node] == NONE) { // climb until a sibling is left
+                if (depth == 0) {
+                    return;
+                }
+                node = stack[--depth];
+                visitor.exit(this, node);
+            }
+            node = nextSiblings[node];
+        }
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    public class Cursor { // moves over the arena like a tree, keeping its own parent path
+        private int node = root;
+        private int[] parents = new int[16];
+        private int depth;
+
+        public int getNode() {
+            return node;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public NodeKind getKind() {
+            return AstArena.this.getKind(node);
+        }
+
+        public String getValue() {
+            return AstArena.this.getValue(node);
+        }
+
+        public boolean gotoFirstChild() {
+            int child = firstChildren[node];
+            if (child == NONE) {
+                return false;
+            }
+            if (depth == parents.length) {
+                parents = Arrays.copyOf(parents, depth * 2);
+            }
+            parents[depth++] = node;
+            node = child;
+            return true;
+        }
+
+        public boolean gotoNextSibling() {
+            int sibling = nextSiblings[node];
+            if (sibling == NONE) {
+                return false;
+            }
+            node = sibling;
+            return true;
+        }
+
+        public boolean gotoParent() {
+            if (depth == 0) {
+                return false;
+            }
+            node = parents[--depth];
+            return true;
+        }
+    }
+
+    public static class Builder implements ParseListener { // fills an arena straight from parse events, no Node tree in between
+        private final AstArena arena;
+        private int[] open = new int[16]; // entered and not yet exited, innermost last
+        private int depth;
+        private int formStart; // arena size and string count when the current top-level form was entered
+        private int formStrings;
+
+        public Builder() {
+            this(null);
+        }
+
+        public Builder(SymbolTable symbols) {
+            this.arena = new AstArena(symbols);
+        }
+
+        public AstArena getArena() {
+            return arena;
+        }
+
+        @Override
+        public void enterNode(NodeKind kind) {
+            if (depth == open.length) {
+                open = Arrays.copyOf(open, depth * 2);
+            }
+            if (depth == 1) {
+                formStart = arena.size;
+                formStrings = arena.stringCount;
+            }
+            open[depth++] = arena.addNode(kind);
+        }
+
+        @Override
+        public void exitNode(NodeKind kind) { // attached only once complete, so a dropped form never reaches the tree
+            attach(open[--depth]);
+        }
+
+        @Override
+        public void leaf(NodeKind kind, Token token, String value, int symbol) {
+            if (arena.symbols != null && token == Token.IDENTIFIER) {
+                attach(arena.addSymbolNode(kind, symbol >= 0 ? symbol : arena.symbols.intern(value)));
+            } else {
+                attach(arena.addNode(kind, value));
+            }
+        }
+
+        @Override
+        public void bodySkipped(TokenBuffer tokens, int start, int end) { // an arena has no lazy nodes, the body is parsed right here
+            try {
+                new Parser(tokens, start).parseStatements(this);
+            } catch (Parser.ParserException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void syntaxError(Diagnostic diagnostic) { // the broken form was never attached, so its nodes can go
+            if (depth > 1) {
+                arena.truncate(formStart, formStrings);
+            }
+            depth = Math.min(depth, 1);
+        }
+
+        private void attach(int node) {
+            if (depth == 0) {
+                arena.setRoot(node);
+                return;
+            }
+            int parent = open[depth - 1];
+            if (arena.getKind(parent).isReversed()) {
+                arena.prependChild(parent, node);
+            } else {
+                arena.appendChild(parent, node);
+            }
+        }
+    }
+
+    public static AstArena fromNode(Node tree) {
+        return fromNode(tree, null);
+    }
+
+    public static AstArena fromNode(Node tree, SymbolTable symbols) { // nodes are laid out in pre-order
+        AstArena arena = new AstArena(symbols);
+        Deque<Node> pending = new ArrayDeque<>();
+        Deque<Integer> parents = new ArrayDeque<>();
+        pending.push(tree);
+        parents.push(NONE);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int parent = parents.pop();
+            NodeKind kind = NodeKind.fromLabel(node.getLabel());
+            int index = symbols != null && node.getSymbol() >= 0 ? arena.addSymbolNode(kind, node.getSymbol()) : arena.addNode(kind, node.getValue());
+            if (parent == NONE) {
+                arena.setRoot(index);
+            } else {
+                arena.appendChild(parent, index);
+            }
+            List<Node> children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                pending.push(children.get(i));
+                parents.push(index);
+            }
+        }
+        return arena;
+    }
+
+    public Node toNode() { // adapter back to the Node tree
+        if (root == NONE) {
+            return null;
+        }
+        Node[] nodes = new Node[size];
+        for (int i = 0; i < size; i++) {
+            int symbol = getSymbol(i);
+            nodes[i] = symbol >= 0 ? new Node(getKind(i).getLabel(), symbols, symbol) : new Node(getKind(i).getLabel(), getValue(i));
+        }
+        for (int i = 0; i < size; i++) {
+            for (int child = firstChildren[i]; child != NONE; child = nextSiblings[child]) {
+                nodes[i].addChild(nodes[child]);
+            }
+        }
+        return nodes[root];
+    }
+
+    @Override
+    public String toString() { // same dump format as Node.toString
+        StringBuilder builder = new StringBuilder();
+        walk(new Visitor() {
+            private int level;
+
+            @Override
+            public void enter(AstArena arena, int node) {
+                for (int i = 0; i < level; i++) {
+                    builder.append("\t");
+                }
+                builder.append("<").append(arena.getKind(node).getLabel()).append(">");
+                String value = arena.getValue(node);
+                if (value != null) {
+                    builder.append(" ").append(value);
+                }
+                builder.append("\n");
+                level++;
+            }
+
+            @Override
+            public void exit(AstArena arena, int node) {
+                level--;
+            }
+        });
+        return builder.toString();
+    }
+}
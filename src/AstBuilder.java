@@ -0,0 +1,75 @@
+import java.util.Arrays;
+import java.util.Collections;
+
+public class AstBuilder implements ParseListener { // builds the Node tree Parser.getAST returns
+    private SymbolTable symbols;
+    private Node[] open = new Node[16]; // entered and not yet exited, innermost last
+    private int depth;
+    private Node root;
+
+    public AstBuilder() {
+        this(null);
+    }
+
+    public AstBuilder(SymbolTable symbols) { // identifiers become interned nodes when a table is given
+        this.symbols = symbols;
+    }
+
+    public void reset(SymbolTable symbols) {
+        this.symbols = symbols;
+        Arrays.fill(open, 0, depth, null);
+        depth = 0;
+        root = null;
+    }
+
+    public Node getRoot() { // the last node completed at the outermost level
+        return root;
+    }
+
+    @Override
+    public void enterNode(NodeKind kind) {
+        if (depth == open.length) {
+            open = Arrays.copyOf(open, depth * 2);
+        }
+        open[depth++] = new Node(kind.getLabel());
+    }
+
+    @Override
+    public void exitNode(NodeKind kind) {
+        Node node = open[--depth];
+        open[depth] = null;
+        if (kind.isReversed()) {
+            Collections.reverse(node.getChildren());
+        }
+        attach(node);
+    }
+
+    @Override
+    public void leaf(NodeKind kind, Token token, String value, int symbol) {
+        if (symbols != null && token == Token.IDENTIFIER) {
+            attach(new Node(kind.getLabel(), symbols, symbol >= 0 ? symbol : symbols.intern(value)));
+        } else {
+            attach(new Node(kind.getLabel(), value));
+        }
+    }
+
+    @Override
+    public void bodySkipped(TokenBuffer tokens, int start, int end) {
+        attach(new LazyStatements(tokens, start, end));
+    }
+
+    @Override
+    public void syntaxError(Diagnostic diagnostic) { // drop the broken form, only the Program node stays open
+        while (depth > 1) {
+            open[--depth] = null;
+        }
+    }
+
+    private void attach(Node node) {
+        if (depth == 0) {
+            root = node;
+        } else {
+            open[depth - 1].addChild(node);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class AstReader {
+    private static final NodeKind[] KINDS = NodeKind.values();
+
+    private AstReader() {
+    }
+
+    public static Node readBinary(ByteBuffer buffer) throws IOException { // reads what AstWriter writes in BINARY format
+        for (byte expected : AstWriter.MAGIC) {
+            if (buffer.get() != expected) {
+                throw new IOException("Not a binary AST");
+            }
+        }
+        Node[] parents = new Node[64];
+        int[] remaining = new int[64];
+        int depth = -1;
+        Node root = null;
+        do {
+            int kind = buffer.get();
+            int childCount = readVarInt(buffer);
+            int length = readVarInt(buffer) - 1;
+            if (kind < 0 || kind >= KINDS.length || length < -1) {
+                throw new IOException("Corrupt binary AST at offset " + buffer.position());
+            }
+            String label = KINDS[kind].getLabel();
+            Node node = length < 0 ? new Node(label) : new Node(label, readString(buffer, length));
+            if (depth < 0) {
+                root = node;
+            } else {
+                parents[depth].addChild(node);
+                remaining[depth]--;
+            }
+            if (childCount > 0) {
+                if (++depth == parents.length) {
+                    parents = Arrays.copyOf(parents, depth * 2);
+                    remaining = Arrays.copyOf(remaining, depth * 2);
+                }
+                parents[depth] = node;
+                remaining[depth] = childCount;
+            }
+            while (depth >= 0 && remaining[depth] == 0) { // close every node whose children are all read
+                parents[depth--] = null;
+            }
+        } while (depth >= 0);
+        return root;
+    }
+
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    static String readString(ByteBuffer buffer, int length) {
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,216 @@
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+public class AstWriter implements Flushable {
+    static final byte[] MAGIC = {'A', 'S', 'T', '1'};
+    private static final int BUFFER_SIZE = 8192;
+
+    public enum Format {
+        TEXT,   // same `<Label> value` dump as Node.toString
+        BINARY  // MAGIC, then per node in pre-order: kind, child count, value length + 1, UTF-8 value
+    }
+
+    private final Writer writer;
+    private final WritableByteChannel channel;
+    private final Format format;
+    private final char[] chars;
+    private final ByteBuffer bytes;
+    private int charCount;
+    private Node[] nodes = new Node[64];
+    private int[] nextChild = new int[64];
+
+    public AstWriter(Writer writer) {
+        this.writer = writer;
+        this.channel = null;
+        this.format = Format.TEXT;
+        this.chars = new char[BUFFER_SIZE];
+        this.bytes = null;
+    }
+
+    public AstWriter(WritableByteChannel channel, Format format) {
+        this.writer = null;
+        this.channel = channel;
+        this.format = format;
+        this.chars = null;
+        this.bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    public void write(Node root) throws IOException { // walks the tree with an explicit stack, writing as it goes
+        if (format == Format.BINARY) {
+            putBytes(MAGIC, 0, MAGIC.length);
+        }
+        int depth = 0;
+        nodes[0] = root;
+        nextChild[0] = 0;
+        writeNode(root.getLabel(), root.getValue(), 0, root.getChildren().size());
+        while (depth >= 0) {
+            List<Node> children = nodes[depth].getChildren();
+            if (nextChild[depth] == children.size()) {
+                nodes[depth--] = null;
+                continue;
+            }
+            Node child = children.get(nextChild[depth]++);
+            writeNode(child.getLabel(), child.getValue(), depth + 1, child.getChildren().size());
+            if (++depth == nodes.length) {
+                nodes = Arrays.copyOf(nodes, depth * 2);
+                nextChild = Arrays.copyOf(nextChild, depth * 2);
+            }
+            nodes[depth] = child;
+            nextChild[depth] = 0;
+        }
+        flush();
+    }
+
+    public void write(AstArena arena) throws IOException {
+        if (format == Format.BINARY) {
+            putBytes(MAGIC, 0, MAGIC.length);
+        }
+        IOException[] failure = new IOException[1];
+        arena.walk(new AstArena.Visitor() {
+            private int level;
+
+            @Override
+            public void enter(AstArena tree, int node) {
+                if (failure[0] == null) {
+                    int childCount = 0;
+                    for (int child = tree.getFirstChild(node); child != AstArena.NONE; child = tree.getNextSibling(child)) {
+                        childCount++;
+                    }
+                    try {
+                        writeNode(tree.getKind(node).getLabel(), tree.getValue(node), level, childCount);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                }
+                level++;
+            }
+
+            @Override
+            public void exit(AstArena tree, int node) {
+                level--;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        flush();
+    }
+
+    private void writeNode(String label, String value, int level, int childCount) throws IOException {
+        if (format == Format.BINARY) {
+            putByte((byte) NodeKind.fromLabel(label).ordinal());
+            putVarInt(childCount);
+            if (value == null) {
+                putVarInt(0);
+            } else {
+                putVarInt(utf8Length(value) + 1);
+                putUtf8(value);
+            }
+            return;
+        }
+        for (int i = 0; i < level; i++) {
+            putText("\t");
+        }
+        putText("<");
+        putText(label);
+        putText(">");
+        if (value != null) {
+            putText(" ");
+            putText(value);
+        }
+        putText("\n");
+    }
+
+    private void putText(String text) throws IOException {
+        if (writer == null) {
+            putUtf8(text);
+            return;
+        }
+        int offset = 0;
+        while (offset < text.length()) {
+            if (charCount == chars.length) {
+                drain();
+            }
+            int count = Math.min(chars.length - charCount, text.length() - offset);
+            text.getChars(offset, offset + count, chars, charCount);
+            charCount += count;
+            offset += count;
+        }
+    }
+
+    private void putUtf8(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) { // ASCII goes straight into the buffer
+            if (text.charAt(i) >= 0x80) {
+                byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+                putBytes(encoded, 0, encoded.length);
+                return;
+            }
+        }
+        for (int i = 0; i < text.length(); i++) {
+            putByte((byte) text.charAt(i));
+        }
+    }
+
+    private static int utf8Length(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return text.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        return text.length();
+    }
+
+    private void putVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            putByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        putByte((byte) value);
+    }
+
+    private void putByte(byte value) throws IOException {
+        if (!bytes.hasRemaining()) {
+            drain();
+        }
+        bytes.put(value);
+    }
+
+    private void putBytes(byte[] source, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (!bytes.hasRemaining()) {
+                drain();
+            }
+            int count = Math.min(bytes.remaining(), length);
+            bytes.put(source, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void drain() throws IOException { // hand the buffer to the output and reuse it
+        if (writer != null) {
+            writer.write(chars, 0, charCount);
+            charCount = 0;
+            return;
+        }
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        drain();
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+}
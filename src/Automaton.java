@@ -1,5 +1,69 @@
 public class Automaton {
+    private static final int CLASS_LEFTPAR = 0;
+    private static final int CLASS_RIGHTPAR = 1;
+    private static final int CLASS_LEFTSQUAREB = 2;
+    private static final int CLASS_RIGHTSQUAREB = 3;
+    private static final int CLASS_LETTER = 4;
+    private static final int CLASS_DIGIT = 5;
+    private static final int CLASS_WHITESPACE = 6;
+    private static final int CLASS_OTHER = 7;
+    private static final int CLASS_QUOTE = 8;
+    private static final int CLASS_SEMICOLON = 9;
+    private static final int CLASS_HASH = 10;
+    private static final int CLASS_BACKSLASH = 11;
+    private static final char[] CLASS_SAMPLES = {'(', ')', '[', ']', 'a', '0', ' ', '+', '"', ';', '#', '\\'};
+
+    private static final Token[] TOKENS = Token.values();
+    private static final byte[] CHAR_CLASSES = new byte[Character.MAX_VALUE + 1];
+    private static final int[][] TRANSITIONS = new int[State.values().length][CLASS_SAMPLES.length]; // (token << 8) | next state
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) { // classify every char once, the same way evaluate does
+            char ch = (char) c;
+            int charClass = CLASS_OTHER;
+            if (ch == '(') {
+                charClass = CLASS_LEFTPAR;
+            } else if (ch == ')') {
+                charClass = CLASS_RIGHTPAR;
+            } else if (ch == '[') {
+                charClass = CLASS_LEFTSQUAREB;
+            } else if (ch == ']') {
+                charClass = CLASS_RIGHTSQUAREB;
+            } else if (Character.isLetter(ch)) {
+                charClass = CLASS_LETTER;
+            } else if (Character.isDigit(ch)) {
+                charClass = CLASS_DIGIT;
+            } else if (Character.isWhitespace(ch)) {
+                charClass = CLASS_WHITESPACE;
+            } else if (ch == '"') {
+                charClass = CLASS_QUOTE;
+            } else if (ch == ';') {
+                charClass = CLASS_SEMICOLON;
+            } else if (ch == '#') {
+                charClass = CLASS_HASH;
+            } else if (ch == '\\') {
+                charClass = CLASS_BACKSLASH;
+            }
+            CHAR_CLASSES[c] = (byte) charClass;
+        }
+        Automaton reference = new Automaton(Engine.SWITCH);
+        for (State from : State.values()) { // derive the table from the switch engine so both accept the same language
+            for (int charClass = 0; charClass < CLASS_SAMPLES.length; charClass++) {
+                reference.state = from;
+                Token token = reference.evaluate(CLASS_SAMPLES[charClass]);
+                TRANSITIONS[from.ordinal()][charClass] = (token.ordinal() << 8) | reference.state.ordinal();
+            }
+        }
+    }
+
+    public enum Engine {
+        SWITCH,  // recursive switch over the states
+        TABLE    // precomputed char class and state x class lookup
+    }
+
+    private final Engine engine;
     private State state;
+    private int tableState;
 
     private enum State {  // define automaton states
         START,
@@ -7,13 +71,52 @@ public class Automaton {
         NUMBER,
         CHAR_LITERAL,
         STRING_LITERAL,
+        STRING_ESCAPE,
         COMMENT,
         INVALID
     }
 
     public Automaton() {
+        this(Engine.TABLE);
+    }
+
+    public Automaton(Engine engine) {
+        this.engine = engine;
         this.state = State.START;
+        this.tableState = State.START.ordinal();
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    void reset() { // back to the start state, so one automaton can serve many lines
+        state = State.START;
+        tableState = State.START.ordinal();
     }
+
+    Token processIdentifier(CharSequence text, int start, int end) { // keyword check without building a String
+        switch (end - start) {
+            case 2:
+                return regionEquals(text, start, "if") ? Token.IF : Token.IDENTIFIER;
+            case 3:
+                return regionEquals(text, start, "let") ? Token.LET : Token.IDENTIFIER;
+            case 6:
+                return regionEquals(text, start, "define") ? Token.DEFINE : Token.IDENTIFIER;
+            default:
+                return Token.IDENTIFIER;
+        }
+    }
+
+    private static boolean regionEquals(CharSequence text, int start, String keyword) {
+        for (int i = 0; i < keyword.length(); i++) {
+            if (text.charAt(start + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     Token processIdentifier(String identifier) {
         switch (identifier) {
             case "define":
@@ -28,6 +131,15 @@ public class Automaton {
         }
 
     public Token evaluate(char input) {
+        if (engine == Engine.TABLE) {
+            int transition = TRANSITIONS[tableState][CHAR_CLASSES[input]];
+            tableState = transition & 0xFF;
+            return TOKENS[transition >>> 8];
+        }
+        return evaluateSwitch(input);
+    }
+
+    private Token evaluateSwitch(char input) {
         Token result = Token.NONE;
 
         switch (state) {
@@ -46,37 +158,66 @@ public class Automaton {
                 } else if (Character.isDigit(input)) {
                     state = State.NUMBER;
                     result = Token.NUMBER;
+                } else if (input == '"') { // literals and comments are only signalled, the lexer scans their bodies in bulk
+                    state = State.STRING_LITERAL;
+                    result = Token.STRING;
+                } else if (input == '#') {
+                    state = State.CHAR_LITERAL;
+                    result = Token.CHAR;
+                } else if (input == ';') {
+                    state = State.COMMENT;
+                    result = Token.COMMENT;
                 }
                 break;
             case IDENTIFIER:
-                if (Character.isWhitespace(input) || input == '(' || input == ')' || input == '[' || input == ']') {
+                if (isDelimiter(input)) {
                     state = State.START;
-                    result = evaluate(input);
+                    result = evaluateSwitch(input);
                 } else if (Character.isDigit(input)) {
                     state = State.INVALID;
                     result = Token.INVALID;
                 }
                 break;
             case NUMBER:
-                if (Character.isWhitespace(input) || input == '(' || input == ')' || input == '[' || input == ']') {
+                if (isDelimiter(input)) {
                     state = State.START;
-                    result = evaluate(input);
+                    result = evaluateSwitch(input);
                 } else if (Character.isLetter(input)) {
                     state = State.INVALID;
                     result = Token.INVALID;
                 }
                 break;
             case INVALID:
-                if (Character.isWhitespace(input) || input == '(' || input == ')' || input == '[' || input == ']') {
+                if (isDelimiter(input)) {
                     state = State.START;
-                    result = evaluate(input);
+                    result = evaluateSwitch(input);
                 } else {
                     result = Token.INVALID;
                 }
                 break;
+            case CHAR_LITERAL: // #t, #f, #\x: the body runs to the next delimiter
+                if (isDelimiter(input)) {
+                    state = State.START;
+                    result = evaluateSwitch(input);
+                }
+                break;
+            case STRING_LITERAL:
+                if (input == '"') {
+                    state = State.START;
+                } else if (input == '\\') {
+                    state = State.STRING_ESCAPE;
+                }
+                break;
+            case STRING_ESCAPE:
+                state = State.STRING_LITERAL;
+                break;
             default:
                 break;
         }
         return result;
     }
+
+    static boolean isDelimiter(char input) { // ends an identifier, number or hash literal
+        return Character.isWhitespace(input) || input == '(' || input == ')' || input == '[' || input == ']' || input == '"' || input == ';';
+    }
 }
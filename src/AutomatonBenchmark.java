@@ -0,0 +1,55 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public class AutomatonBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    public static void main(String[] args) throws IOException {
+        String input = args.length > 0 ? new String(Files.readAllBytes(Paths.get(args[0]))) : syntheticInput(1 << 20);
+        char[] chars = input.toCharArray();
+
+        for (Automaton.Engine engine : Automaton.Engine.values()) {
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                run(engine, chars);
+            }
+            long sink = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                sink += run(engine, chars);
+            }
+            long elapsed = System.nanoTime() - start;
+            double charsPerSecond = (double) chars.length * MEASURED_ROUNDS / (elapsed / 1e9);
+            System.out.printf("%-6s %,15.0f chars/sec (checksum %d)%n", engine, charsPerSecond, sink);
+        }
+    }
+
+    static long run(Automaton.Engine engine, char[] chars) { // feed every char through one automaton per line, Benchmarks runs this too
+        long checksum = 0;
+        Automaton automaton = new Automaton(engine);
+        for (char c : chars) {
+            if (c == '\n') {
+                automaton = new Automaton(engine);
+                continue;
+            }
+            checksum += automaton.evaluate(c).ordinal();
+        }
+        return checksum;
+    }
+
+    private static String syntheticInput(int size) {
+        String[] forms = {
+                "(define (fibonacci n)\n",
+                "( let fib ((prev 0) (cur 1) (i 0))\n",
+                "( if (= i n) cur (fib cur (+ prev cur) (+ i 1)))))\n",
+                "(define counter_value 12345)\n",
+                "(begin [display long_identifier_name] (newline))\n"
+        };
+        StringBuilder builder = new StringBuilder(size + 64);
+        for (int i = 0; builder.length() < size; i++) {
+            builder.append(forms[i % forms.length]);
+        }
+        return builder.toString();
+    }
+}
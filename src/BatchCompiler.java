@@ -0,0 +1,235 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BatchCompiler {
+    private final int parallelism;
+    private final Semaphore openFiles; // caps how many files are being read at once
+
+    public static class FileResult {
+        private final Path path;
+        private final long bytes;
+        private final long nanos;
+        private final Node ast;
+        private final String error;
+        private final List<Diagnostic> diagnostics;
+
+        FileResult(Path path, long bytes, long nanos, Node ast, String error, List<Diagnostic> diagnostics) {
+            this.path = path;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.ast = ast;
+            this.error = error;
+            this.diagnostics = diagnostics;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public Node getAST() { // null when the file could not be read, partial when it has diagnostics
+            return ast;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        public List<Diagnostic> getDiagnostics() { // every lexical and syntax error in the file
+            return diagnostics;
+        }
+
+        public boolean isSuccess() {
+            return error == null && diagnostics.isEmpty();
+        }
+    }
+
+    public static class Report {
+        private final List<FileResult> results;
+        private final long wallNanos;
+        private final long[] sortedNanos;
+
+        Report(List<FileResult> results, long wallNanos) {
+            this.results = results;
+            this.wallNanos = wallNanos;
+            this.sortedNanos = new long[results.size()];
+            for (int i = 0; i < results.size(); i++) {
+                sortedNanos[i] = results.get(i).getNanos();
+            }
+            Arrays.sort(sortedNanos);
+        }
+
+        public List<FileResult> getResults() { // same order as the input files
+            return results;
+        }
+
+        public int getErrorCount() {
+            int errors = 0;
+            for (FileResult result : results) {
+                if (!result.isSuccess()) {
+                    errors++;
+                }
+            }
+            return errors;
+        }
+
+        public double getFilesPerSecond() {
+            return results.size() / (wallNanos / 1e9);
+        }
+
+        public double getMegabytesPerSecond() {
+            long bytes = 0;
+            for (FileResult result : results) {
+                bytes += result.getBytes();
+            }
+            return bytes / 1e6 / (wallNanos / 1e9);
+        }
+
+        public double getLatencyMillis(double percentile) { // per-file time from read to AST, nearest rank
+            if (sortedNanos.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sortedNanos.length);
+            return sortedNanos[Math.max(0, Math.min(sortedNanos.length - 1, rank - 1))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d files, %d errors in %.1f ms: %.1f files/sec, %.2f MB/sec, latency p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+                    results.size(), getErrorCount(), wallNanos / 1e6, getFilesPerSecond(), getMegabytesPerSecond(),
+                    getLatencyMillis(50), getLatencyMillis(99), getLatencyMillis(99.9), getLatencyMillis(100));
+        }
+    }
+
+    public BatchCompiler() {
+        this(Runtime.getRuntime().availableProcessors(), 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchCompiler(int parallelism, int maxOpenFiles) {
+        this.parallelism = parallelism;
+        this.openFiles = new Semaphore(maxOpenFiles);
+    }
+
+    public static List<Path> collect(Path directoryOrManifest) throws IOException { // a directory is walked, any other file lists one path per line
+        if (Files.isDirectory(directoryOrManifest)) {
+            try (Stream<Path> files = Files.walk(directoryOrManifest)) {
+                return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+        }
+        Path base = directoryOrManifest.toAbsolutePath().getParent();
+        List<Path> files = new ArrayList<>();
+        for (String line : Files.readAllLines(directoryOrManifest)) {
+            if (!line.isBlank()) {
+                files.add(base.resolve(line.strip()));
+            }
+        }
+        return files;
+    }
+
+    public Report compile(List<Path> files) throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(parallelism); // idle workers steal queued files from busy ones
+        try {
+            List<Callable<FileResult>> tasks = new ArrayList<>(files.size());
+            for (Path file : files) {
+                tasks.add(() -> compileFile(file));
+            }
+            long start = System.nanoTime();
+            List<Future<FileResult>> futures = pool.invokeAll(tasks);
+            List<FileResult> results = new ArrayList<>(futures.size());
+            for (Future<FileResult> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return new Report(results, System.nanoTime() - start);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private FileResult compileFile(Path file) throws InterruptedException {
+        long start = System.nanoTime();
+        byte[] content;
+        try {
+            ForkJoinPool.managedBlock(new OpenFilePermit()); // lets the pool add a worker while this one waits
+            try {
+                content = Files.readAllBytes(file);
+            } finally {
+                openFiles.release();
+            }
+        } catch (IOException e) {
+            return new FileResult(file, 0, System.nanoTime() - start, null, "Error reading the input file: " + e.getMessage(), Collections.emptyList());
+        }
+
+        // every file gets its own analyzer and parser, nothing is shared between workers
+        try {
+            List<Diagnostic> diagnostics = new ArrayList<>();
+            Lexical_Analyzer lexicalAnalyzer = new Lexical_Analyzer();
+            IterativeParser parser = new IterativeParser(lexicalAnalyzer.analyzeSource(new String(content, StandardCharsets.UTF_8), diagnostics)); // deep nesting can't overflow a worker's stack
+            diagnostics.addAll(parser.parseWithRecovery()); // one pass reports all errors in the file
+            return new FileResult(file, content.length, System.nanoTime() - start, parser.getAST(), null, diagnostics);
+        } catch (RuntimeException | StackOverflowError e) { // a failure in one file is that file's result, the rest of the batch goes on; other errors leave the JVM unusable and still propagate
+            return new FileResult(file, content.length, System.nanoTime() - start, null, "Error analyzing the input file: " + e, Collections.emptyList());
+        }
+    }
+
+    private class OpenFilePermit implements ForkJoinPool.ManagedBlocker {
+        private boolean acquired;
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (!acquired) {
+                openFiles.acquire();
+                acquired = true;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return acquired || (acquired = openFiles.tryAcquire());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: BatchCompiler <directory or manifest> [parallelism] [max open files]");
+            return;
+        }
+        int parallelism = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int maxOpenFiles = args.length > 2 ? Integer.parseInt(args[2]) : 2 * parallelism;
+        Report report = new BatchCompiler(parallelism, maxOpenFiles).compile(collect(Paths.get(args[0])));
+        for (FileResult result : report.getResults()) {
+            if (result.getError() != null) {
+                System.err.println(result.getPath() + ": " + result.getError());
+            }
+            for (Diagnostic diagnostic : result.getDiagnostics()) {
+                System.err.println(result.getPath() + ":" + diagnostic);
+            }
+        }
+        System.out.println(report);
+    }
+}
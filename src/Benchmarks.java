@@ -0,0 +1,319 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class Benchmarks {
+    private static final String CSV_HEADER = "benchmark,ops_per_sec,error_pct,mb_per_sec,bytes_per_op";
+
+    private interface Workload {
+        long run() throws Exception; // returns a checksum so the work can't be optimized away
+    }
+
+    private static class Result {
+        final String name;
+        final double opsPerSecond;
+        final double errorPercent;
+        final double megabytesPerSecond;
+        final double bytesPerOp;
+
+        Result(String name, double opsPerSecond, double errorPercent, double megabytesPerSecond, double bytesPerOp) {
+            this.name = name;
+            this.opsPerSecond = opsPerSecond;
+            this.errorPercent = errorPercent;
+            this.megabytesPerSecond = megabytesPerSecond;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+
+    private static int warmupIterations = 3;
+    private static int measurementIterations = 5;
+    private static long iterationMillis = 500;
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        String filter = "";
+        String baseline = null;
+        String save = null;
+        double tolerance = 0.10;
+        for (int i = 0; i < args.length; i++) { // -f filter, -b baseline.csv, -o results.csv, -t tolerance, -w/-i/-r like JMH
+            switch (args[i]) {
+                case "-f":
+                    filter = args[++i];
+                    break;
+                case "-b":
+                    baseline = args[++i];
+                    break;
+                case "-o":
+                    save = args[++i];
+                    break;
+                case "-t":
+                    tolerance = Double.parseDouble(args[++i]);
+                    break;
+                case "-w":
+                    warmupIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    measurementIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-r":
+                    iterationMillis = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        Map<String, String> corpora = new LinkedHashMap<>();
+        corpora.put("deepNesting", deepNesting(40, 500));
+        corpora.put("longIdentifiers", longIdentifiers(2000, 256));
+        corpora.put("manySmallForms", manySmallForms(20000));
+        corpora.put("hugeSingleLine", manySmallForms(20000).replace('\n', ' '));
+        corpora.put("commentsAndStrings", commentsAndStrings(2000, 256));
+
+        List<Result> results = new ArrayList<>();
+        System.out.println(CSV_HEADER);
+        for (Map.Entry<String, String> corpus : corpora.entrySet()) {
+            String text = corpus.getValue();
+            Map<Integer, String> lines = toLineMap(text);
+            Lexical_Analyzer analyzer = new Lexical_Analyzer();
+            List<Lexeme> lexemes = analyzer.analyzeCode(lines);
+            Parser astParser = new Parser(lexemes);
+            astParser.parse();
+            Node ast = astParser.getAST();
+            Parser indexParser = new Parser(lexemes);
+            indexParser.setIdentifierIndex(new IdentifierIndex());
+            indexParser.parse();
+            IdentifierIndex identifiers = indexParser.getIdentifierIndex();
+            Set<String> distinctNames = new LinkedHashSet<>(); // each name once, or frequent names would be looked up once per occurrence
+            for (int i = 0; i < identifiers.size(); i++) {
+                distinctNames.add(identifiers.getName(i));
+            }
+            String[] names = distinctNames.toArray(new String[0]);
+            char[] chars = text.toCharArray();
+            TokenBuffer tokens = new TokenBuffer(text, analyzer.getSymbolTable());
+            analyzer.analyzeSource(text, tokens);
+
+            Map<String, Workload> workloads = new LinkedHashMap<>();
+            workloads.put("Automaton.evaluate", () -> AutomatonBenchmark.run(Automaton.Engine.TABLE, chars));
+            workloads.put("Lexical_Analyzer.analyzeLine", () -> {
+                List<Lexeme> lineLexemes = new ArrayList<>();
+                for (Map.Entry<Integer, String> line : lines.entrySet()) {
+                    analyzer.analyzeLine(line.getKey(), line.getValue().strip(), lineLexemes);
+                }
+                return lineLexemes.size();
+            });
+            workloads.put("Lexical_Analyzer.analyzeCode", () -> analyzer.analyzeCode(lines).size());
+            workloads.put("Parser.parse", () -> {
+                Parser parser = new Parser(lexemes);
+                parser.parse();
+                return parser.getAST().getChildren().size();
+            });
+            workloads.put("Parser.parse(ParseListener)", () -> { // validation only, no tree
+                Parser parser = new Parser(lexemes);
+                parser.parse(new ParseListener() {
+                });
+                return parser.getPosition();
+            });
+            workloads.put("Parser.parse(TokenBuffer)", () -> { // eager baseline on the same input as lazy bodies
+                Parser parser = new Parser(tokens);
+                parser.parse();
+                return parser.getAST().getChildren().size();
+            });
+            workloads.put("Parser.parse lazy bodies", () -> { // bodies stay unparsed token spans, compare with Parser.parse(TokenBuffer)
+                Parser parser = new Parser(tokens);
+                parser.setLazyBodies(true);
+                parser.parse();
+                return parser.getAST().getChildren().size();
+            });
+            workloads.put("Parser.parse(IdentifierIndex)", () -> {
+                Parser parser = new Parser(lexemes);
+                parser.setIdentifierIndex(new IdentifierIndex());
+                parser.parse();
+                return parser.getIdentifierIndex().size();
+            });
+            workloads.put("IdentifierIndex.find", () -> { // one lookup per distinct name
+                long found = 0;
+                for (String name : names) {
+                    found += identifiers.find(name).length;
+                }
+                return found;
+            });
+            workloads.put("IterativeParser.parse", () -> {
+                IterativeParser parser = new IterativeParser(lexemes);
+                parser.parse();
+                return parser.getAST().getChildren().size();
+            });
+            workloads.put("Node.toString", () -> ast.toString().length());
+
+            for (Map.Entry<String, Workload> workload : workloads.entrySet()) {
+                String name = workload.getKey() + ":" + corpus.getKey();
+                if (!name.contains(filter)) {
+                    continue;
+                }
+                Result result = measure(name, text.length(), workload.getValue());
+                results.add(result);
+                System.out.println(toCsv(result));
+            }
+        }
+
+        if (save != null) {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(save)))) {
+                writer.println(CSV_HEADER);
+                for (Result result : results) {
+                    writer.println(toCsv(result));
+                }
+            }
+        }
+        if (baseline != null && !compare(results, baseline, tolerance)) {
+            System.exit(1);
+        }
+    }
+
+    private static Result measure(String name, int inputChars, Workload workload) throws Exception {
+        for (int i = 0; i < warmupIterations; i++) {
+            runIteration(workload);
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long allocatedBefore = allocatedBytes(threads);
+        long totalOps = 0;
+        double[] rates = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++) {
+            long start = System.nanoTime();
+            long ops = runIteration(workload);
+            rates[i] = ops / ((System.nanoTime() - start) / 1e9);
+            totalOps += ops;
+        }
+        long allocated = allocatedBytes(threads) - allocatedBefore;
+
+        double mean = 0;
+        for (double rate : rates) {
+            mean += rate;
+        }
+        mean /= rates.length;
+        double variance = 0;
+        for (double rate : rates) {
+            variance += (rate - mean) * (rate - mean);
+        }
+        double error = rates.length > 1 ? Math.sqrt(variance / (rates.length - 1)) / mean * 100 : 0;
+        double bytesPerOp = allocated < 0 ? Double.NaN : (double) allocated / totalOps;
+        return new Result(name, mean, error, mean * inputChars / 1e6, bytesPerOp);
+    }
+
+    private static long runIteration(Workload workload) throws Exception { // run until the iteration time is used up
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000;
+        long ops = 0;
+        do {
+            sink += workload.run();
+            ops++;
+        } while (System.nanoTime() < deadline);
+        return ops;
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads) { // same counter JMH's gc profiler reads, -1 if unsupported
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static boolean compare(List<Result> results, String baselineFile, double tolerance) throws IOException {
+        Map<String, String[]> baseline = new HashMap<>();
+        for (String line : Files.readAllLines(Paths.get(baselineFile))) {
+            String[] fields = line.split(",");
+            if (!line.equals(CSV_HEADER) && fields.length == 5) {
+                baseline.put(fields[0], fields);
+            }
+        }
+        boolean passed = true;
+        for (Result result : results) {
+            String[] previous = baseline.get(result.name);
+            if (previous == null) {
+                continue;
+            }
+            double previousOps = Double.parseDouble(previous[1]);
+            double previousBytes = Double.parseDouble(previous[4]);
+            if (result.opsPerSecond < previousOps * (1 - tolerance)) {
+                System.err.printf("REGRESSION %s: %.1f ops/s vs baseline %.1f%n", result.name, result.opsPerSecond, previousOps);
+                passed = false;
+            }
+            if (result.bytesPerOp > previousBytes * (1 + tolerance)) {
+                System.err.printf("REGRESSION %s: %.1f bytes/op vs baseline %.1f%n", result.name, result.bytesPerOp, previousBytes);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    private static String toCsv(Result result) {
+        return String.format("%s,%.3f,%.2f,%.3f,%.1f", result.name, result.opsPerSecond, result.errorPercent, result.megabytesPerSecond, result.bytesPerOp);
+    }
+
+    private static Map<Integer, String> toLineMap(String text) {
+        Map<Integer, String> lines = new HashMap<>();
+        String[] split = text.split("\n");
+        for (int i = 0; i < split.length; i++) {
+            lines.put(i + 1, split[i]);
+        }
+        return lines;
+    }
+
+    private static String deepNesting(int forms, int depth) { // (define x (f (f (f ... 1))))
+        StringBuilder builder = new StringBuilder();
+        for (int n = 0; n < forms; n++) {
+            builder.append("(define x ");
+            for (int i = 0; i < depth; i++) {
+                builder.append("(f ");
+            }
+            builder.append('1');
+            for (int i = 0; i < depth; i++) {
+                builder.append(')');
+            }
+            builder.append(")\n");
+        }
+        return builder.toString();
+    }
+
+    private static String longIdentifiers(int forms, int length) { // (define (fun_ab.. arg_ab..) (call_ab.. arg_ab..))
+        StringBuilder identifier = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            identifier.append((char) ('a' + i % 26));
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int n = 0; n < forms; n++) {
+            builder.append("(define (fun_").append(identifier).append(" arg_").append(identifier).append(")\n")
+                    .append("  (call_").append(identifier).append(" arg_").append(identifier).append("))\n");
+        }
+        return builder.toString();
+    }
+
+    private static String commentsAndStrings(int forms, int length) { // ; comment lines and (define s "....") with long bodies
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            body.append(i % 40 == 39 ? ' ' : (char) ('a' + i % 26));
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int n = 0; n < forms; n++) {
+            builder.append("; ").append(body).append('\n')
+                    .append("(define s \"").append(body).append("\") ; trailing ").append(body).append('\n');
+        }
+        return builder.toString();
+    }
+
+    private static String manySmallForms(int forms) {
+        StringBuilder builder = new StringBuilder();
+        for (int n = 0; n < forms; n++) {
+            builder.append("(define value ").append(n).append(")\n");
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,28 @@
+public class Diagnostic {
+    private final String message;
+    private final int lineNumber;
+    private final int columnNumber;
+
+    public Diagnostic(String message, int lineNumber, int columnNumber) {
+        this.message = message;
+        this.lineNumber = lineNumber;
+        this.columnNumber = columnNumber;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public int getColumnNumber() {
+        return columnNumber;
+    }
+
+    @Override
+    public String toString() {
+        return lineNumber + ":" + columnNumber + ": " + message;
+    }
+}
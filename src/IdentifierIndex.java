@@ -0,0 +1,182 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class IdentifierIndex { // every identifier the parser consumed, chained per name so a lookup never walks the tree
+    public enum Role {
+        DEFINITION, // define, named let and let bindings
+        PARAMETER,
+        CALL,
+        REFERENCE
+    }
+
+    private static final Role[] ROLES = Role.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final SymbolTable symbols;
+    private int[] names; // parallel arrays, one slot per entry in source order
+    private int[] lineNumbers;
+    private int[] columnNumbers;
+    private byte[] roles;
+    private int[] previous; // earlier entry with the same name, -1 for the first
+    private int[] last = new int[INITIAL_CAPACITY]; // per symbol id, latest entry + 1, 0 if the name has none
+    private int size;
+
+    public IdentifierIndex() {
+        this(new SymbolTable());
+    }
+
+    public IdentifierIndex(SymbolTable symbols) { // share the lexer's table and interned ids are used as they are
+        this.symbols = symbols;
+        this.names = new int[INITIAL_CAPACITY];
+        this.lineNumbers = new int[INITIAL_CAPACITY];
+        this.columnNumbers = new int[INITIAL_CAPACITY];
+        this.roles = new byte[INITIAL_CAPACITY];
+        this.previous = new int[INITIAL_CAPACITY];
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public void add(int symbol, int lineNumber, int columnNumber, Role role) { // symbol must come from this index's table
+        if (size == names.length) {
+            int capacity = size * 2;
+            names = Arrays.copyOf(names, capacity);
+            lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+            columnNumbers = Arrays.copyOf(columnNumbers, capacity);
+            roles = Arrays.copyOf(roles, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+        }
+        if (symbol >= last.length) {
+            last = Arrays.copyOf(last, Math.max(symbol + 1, last.length * 2));
+        }
+        names[size] = symbol;
+        lineNumbers[size] = lineNumber;
+        columnNumbers[size] = columnNumber;
+        roles[size] = (byte) role.ordinal();
+        previous[size] = last[symbol] - 1;
+        last[symbol] = size + 1;
+        size++;
+    }
+
+    public void add(String name, int lineNumber, int columnNumber, Role role) {
+        add(symbols.intern(name), lineNumber, columnNumber, role);
+    }
+
+    void truncate(int size) { // drop the entries added after the index had this many, for a form that failed to parse
+        while (this.size > size) {
+            this.size--;
+            last[names[this.size]] = previous[this.size] + 1;
+        }
+    }
+
+    public void clear() {
+        truncate(0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int count(String name) {
+        int count = 0;
+        for (int entry = latest(name); entry >= 0; entry = previous[entry]) {
+            count++;
+        }
+        return count;
+    }
+
+    public int[] find(String name) { // entries for the name in source order, empty if it never occurred
+        int[] entries = new int[count(name)];
+        int i = entries.length;
+        for (int entry = latest(name); entry >= 0; entry = previous[entry]) {
+            entries[--i] = entry;
+        }
+        return entries;
+    }
+
+    private int latest(String name) {
+        int symbol = symbols.find(name);
+        return symbol >= 0 && symbol < last.length ? last[symbol] - 1 : -1;
+    }
+
+    public int getSymbol(int entry) {
+        return names[entry];
+    }
+
+    public String getName(int entry) {
+        return symbols.name(names[entry]);
+    }
+
+    public int getLineNumber(int entry) {
+        return lineNumbers[entry];
+    }
+
+    public int getColumnNumber(int entry) {
+        return columnNumbers[entry];
+    }
+
+    public Role getRole(int entry) {
+        return ROLES[roles[entry]];
+    }
+
+    public void write(DataOutputStream out) throws IOException { // names once each, then per entry: name, line, column, role
+        int[] local = new int[last.length]; // symbol id -> position in the written name list + 1
+        int nameCount = 0;
+        for (int entry = 0; entry < size; entry++) {
+            if (local[names[entry]] == 0) {
+                local[names[entry]] = ++nameCount;
+            }
+        }
+        writeVarInt(out, nameCount);
+        int[] written = new int[nameCount];
+        for (int symbol = 0; symbol < local.length; symbol++) {
+            if (local[symbol] != 0) {
+                written[local[symbol] - 1] = symbol;
+            }
+        }
+        for (int symbol : written) {
+            byte[] name = symbols.name(symbol).getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, name.length);
+            out.write(name);
+        }
+        writeVarInt(out, size);
+        for (int entry = 0; entry < size; entry++) {
+            writeVarInt(out, local[names[entry]] - 1);
+            writeVarInt(out, lineNumbers[entry]);
+            writeVarInt(out, columnNumbers[entry]);
+            out.writeByte(roles[entry]);
+        }
+    }
+
+    public static IdentifierIndex read(ByteBuffer buffer, SymbolTable symbols) throws IOException { // reads what write wrote, names are interned into the table
+        IdentifierIndex index = new IdentifierIndex(symbols);
+        int[] written = new int[AstReader.readVarInt(buffer)];
+        for (int i = 0; i < written.length; i++) {
+            written[i] = symbols.intern(AstReader.readString(buffer, AstReader.readVarInt(buffer)));
+        }
+        int count = AstReader.readVarInt(buffer);
+        for (int i = 0; i < count; i++) {
+            int name = AstReader.readVarInt(buffer);
+            int lineNumber = AstReader.readVarInt(buffer);
+            int columnNumber = AstReader.readVarInt(buffer);
+            int role = buffer.get();
+            if (name < 0 || name >= written.length || role < 0 || role >= ROLES.length) {
+                throw new IOException("Corrupt identifier index at offset " + buffer.position());
+            }
+            index.add(written[name], lineNumber, columnNumber, ROLES[role]);
+        }
+        return index;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+}
@@ -0,0 +1,357 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class IncrementalDocument { // lines grouped into segments of whole top-level forms, kept in a treap so an edit only touches the segments it overlaps
+    private final Lexical_Analyzer analyzer;
+    private Segment root; // implicit treap, in-order is document order
+    private int seed = 0x2545F491; // xorshift state for the treap priorities
+
+    private static class Line { // the text of a line and its lexemes, which only change when the line itself is replaced
+        final String text;
+        final List<Lexeme> lexemes; // null if the lexer rejected the line; line numbers are whatever the line had when lexed, getLexemes renumbers
+        final int depthChange; // paren depth after the line is max(depth + depthChange, minDepth), a stray ) never goes below 0
+        final int minDepth;
+
+        Line(String text, List<Lexeme> lexemes) {
+            this.text = text;
+            this.lexemes = lexemes;
+            int change = 0;
+            int min = 0;
+            if (lexemes != null) {
+                for (Lexeme lexeme : lexemes) {
+                    if (lexeme.getToken() == Token.LEFTPAR) {
+                        change++;
+                        min++;
+                    } else if (lexeme.getToken() == Token.RIGHTPAR) {
+                        change--;
+                        min = Math.max(min - 1, 0);
+                    }
+                }
+            }
+            this.depthChange = change;
+            this.minDepth = min;
+        }
+    }
+
+    private static class Segment { // whole lines that start and end outside any form, with their parsed forms
+        final List<Line> lines;
+        final List<Node> forms = new ArrayList<>();
+        final int lexicalErrorLine; // index into lines of the line the lexer rejected, -1 if none
+        final boolean open; // a form is still open after the last line, only ever true for the last segment
+        Parser.ParserException parseError;
+        final int priority;
+        Segment left;
+        Segment right;
+        int size; // subtree totals, kept by update()
+        int lineCount;
+        int lexicalErrors;
+        int parseErrors;
+
+        Segment(List<Line> lines, int lexicalErrorLine, boolean open, int priority) {
+            this.lines = lines;
+            this.lexicalErrorLine = lexicalErrorLine;
+            this.open = open;
+            this.priority = priority;
+        }
+
+        Segment update() {
+            size = 1 + size(left) + size(right);
+            lineCount = lines.size() + lineCount(left) + lineCount(right);
+            lexicalErrors = (lexicalErrorLine >= 0 ? 1 : 0) + (left != null ? left.lexicalErrors : 0) + (right != null ? right.lexicalErrors : 0);
+            parseErrors = (parseError != null ? 1 : 0) + (left != null ? left.parseErrors : 0) + (right != null ? right.parseErrors : 0);
+            return this;
+        }
+    }
+
+    public IncrementalDocument(Lexical_Analyzer analyzer, String text) {
+        this.analyzer = analyzer;
+        List<Line> lines = new ArrayList<>();
+        for (String line : splitLines(text)) {
+            lines.add(lex(lines.size() + 1, line));
+        }
+        root = analyze(lines, null)[0];
+    }
+
+    public void edit(int fromLine, int toLine, String replacement) { // replace lines [fromLine, toLine), 1-based; only the new lines are lexed, the overlapped segments are parsed again
+        int total = getLineCount();
+        if (fromLine < 1 || toLine < fromLine || toLine > total + 1) {
+            throw new IndexOutOfBoundsException("Invalid line range [" + fromLine + ", " + toLine + ") for " + total + " lines");
+        }
+        int count = size(root);
+        int first = fromLine <= total ? segmentAt(fromLine) : count;
+        if (first == count && count > 0 && last(root).open) { // appending to a form that never closed
+            first--;
+        }
+        int last = toLine > fromLine ? segmentAt(toLine - 1) + 1 : Math.min(first + 1, count);
+
+        Segment[] split = split(root, first);
+        Segment before = split[0];
+        split = split(split[1], last - first);
+        int firstLine = lineCount(before) + 1;
+        List<Line> oldLines = new ArrayList<>();
+        for (Segment segment : inOrder(split[0])) {
+            oldLines.addAll(segment.lines);
+        }
+        List<Line> region = new ArrayList<>(oldLines.subList(0, fromLine - firstLine));
+        int lineNumber = fromLine;
+        for (String line : splitLines(replacement)) { // only the new lines are lexed, the others keep their lexemes
+            region.add(lex(lineNumber++, line));
+        }
+        region.addAll(oldLines.subList(toLine - firstLine, oldLines.size()));
+
+        Segment[] rebuilt = analyze(region, split[1]);
+        root = merge(merge(before, rebuilt[0]), rebuilt[1]);
+    }
+
+    private Line lex(int lineNumber, String text) {
+        List<Lexeme> lexemes = new ArrayList<>();
+        try {
+            analyzer.analyzeLine(lineNumber, text.strip(), lexemes);
+        } catch (LexicalException e) { // getLexicalError lexes the line again for the message
+            return new Line(text, null);
+        }
+        return new Line(text, lexemes);
+    }
+
+    private Segment[] analyze(List<Line> region, Segment after) { // cut the region into segments where the paren depth is back at 0, then what is left of after
+        Segment built = null;
+        int segmentStart = 0;
+        int depth = 0;
+        for (int i = 0; ; i++) {
+            if (i == region.size()) {
+                if (depth == 0 || after == null) {
+                    break;
+                }
+                Segment[] next = split(after, 1); // the region ends inside a form, the following segment belongs to it now
+                after = next[1];
+                region.addAll(next[0].lines);
+            }
+            Line line = region.get(i);
+            if (line.lexemes == null) { // the segment ends at the rejected line
+                built = merge(built, segment(region, segmentStart, i + 1, i - segmentStart, false));
+                segmentStart = i + 1;
+                depth = 0;
+                continue;
+            }
+            depth = Math.max(depth + line.depthChange, line.minDepth);
+            if (depth == 0) {
+                built = merge(built, segment(region, segmentStart, i + 1, -1, false));
+                segmentStart = i + 1;
+            }
+        }
+        if (segmentStart < region.size()) {
+            built = merge(built, segment(region, segmentStart, region.size(), -1, true));
+        }
+        return new Segment[]{built, after};
+    }
+
+    private Segment segment(List<Line> region, int from, int to, int lexicalErrorLine, boolean open) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        Segment segment = new Segment(new ArrayList<>(region.subList(from, to)), lexicalErrorLine, open, seed);
+        if (lexicalErrorLine < 0) { // a segment starts outside any form, so its forms parse the same as in the whole document
+            List<Lexeme> lexemes = new ArrayList<>();
+            for (Line line : segment.lines) {
+                lexemes.addAll(line.lexemes);
+            }
+            Parser parser = new Parser(lexemes);
+            try {
+                while (parser.hasMoreTokens()) {
+                    segment.forms.add(parser.parseTopLevelForm());
+                }
+            } catch (Parser.ParserException e) {
+                segment.parseError = e;
+            }
+        }
+        return segment.update();
+    }
+
+    private int segmentAt(int line) { // index of the segment holding the 1-based line
+        Segment node = root;
+        int index = 0;
+        while (true) {
+            int leftLines = lineCount(node.left);
+            if (line <= leftLines) {
+                node = node.left;
+                continue;
+            }
+            line -= leftLines;
+            if (line <= node.lines.size()) {
+                return index + size(node.left);
+            }
+            line -= node.lines.size();
+            index += size(node.left) + 1;
+            node = node.right;
+        }
+    }
+
+    private static Segment merge(Segment a, Segment b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            return a.update();
+        }
+        b.left = merge(a, b.left);
+        return b.update();
+    }
+
+    private static Segment[] split(Segment node, int count) { // the first count segments, then the rest
+        if (node == null) {
+            return new Segment[2];
+        }
+        if (size(node.left) >= count) {
+            Segment[] parts = split(node.left, count);
+            node.left = parts[1];
+            parts[1] = node.update();
+            return parts;
+        }
+        Segment[] parts = split(node.right, count - size(node.left) - 1);
+        node.right = parts[0];
+        parts[0] = node.update();
+        return parts;
+    }
+
+    private static Segment last(Segment node) {
+        while (node.right != null) {
+            node = node.right;
+        }
+        return node;
+    }
+
+    private static int size(Segment node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static int lineCount(Segment node) {
+        return node != null ? node.lineCount : 0;
+    }
+
+    private static List<Segment> inOrder(Segment node) {
+        List<Segment> segments = new ArrayList<>();
+        inOrder(node, segments);
+        return segments;
+    }
+
+    private static void inOrder(Segment node, List<Segment> segments) {
+        if (node != null) {
+            inOrder(node.left, segments);
+            segments.add(node);
+            inOrder(node.right, segments);
+        }
+    }
+
+    private static List<String> splitLines(String text) {
+        List<String> result = new ArrayList<>();
+        int length = text.length();
+        int lineStart = 0;
+        while (lineStart < length) { // same line terminators as BufferedReader.readLine
+            int lineEnd = lineStart;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n' && text.charAt(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            result.add(text.substring(lineStart, lineEnd));
+            lineStart = lineEnd + 1;
+            if (lineEnd + 1 < length && text.charAt(lineEnd) == '\r' && text.charAt(lineEnd + 1) == '\n') {
+                lineStart++;
+            }
+        }
+        return result;
+    }
+
+    public int getLineCount() {
+        return lineCount(root);
+    }
+
+    public String getText() {
+        List<String> lines = new ArrayList<>(getLineCount());
+        for (Segment segment : inOrder(root)) {
+            for (Line line : segment.lines) {
+                lines.add(line.text);
+            }
+        }
+        return String.join("\n", lines);
+    }
+
+    public List<Lexeme> getLexemes() { // built on each call with absolute line numbers, empty while there is a lexical error
+        List<Lexeme> lexemes = new ArrayList<>();
+        if (root != null && root.lexicalErrors > 0) {
+            return Collections.unmodifiableList(lexemes);
+        }
+        SymbolTable symbols = analyzer.getSymbolTable();
+        int lineNumber = 0;
+        for (Segment segment : inOrder(root)) {
+            for (Line line : segment.lines) {
+                lineNumber++;
+                for (Lexeme lexeme : line.lexemes) {
+                    if (lexeme.getSymbol() >= 0) {
+                        lexemes.add(new Lexeme(lexeme.getToken(), symbols, lexeme.getSymbol(), lineNumber, lexeme.getColumnNumber()));
+                    } else {
+                        lexemes.add(new Lexeme(lexeme.getToken(), lexeme.getValue(), lineNumber, lexeme.getColumnNumber()));
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableList(lexemes);
+    }
+
+    public LexicalException getLexicalError() { // the first rejected line in the document, lexed again so the message has its current line number
+        if (root == null || root.lexicalErrors == 0) {
+            return null;
+        }
+        Segment node = root;
+        int firstLine = 1;
+        while (true) {
+            if (node.left != null && node.left.lexicalErrors > 0) {
+                node = node.left;
+            } else if (node.lexicalErrorLine >= 0) {
+                break;
+            } else {
+                firstLine += lineCount(node.left) + node.lines.size();
+                node = node.right;
+            }
+        }
+        firstLine += lineCount(node.left);
+        try {
+            analyzer.analyzeLine(firstLine + node.lexicalErrorLine, node.lines.get(node.lexicalErrorLine).text.strip(), new ArrayList<>());
+        } catch (LexicalException e) {
+            return e;
+        }
+        throw new IllegalStateException("Line " + (firstLine + node.lexicalErrorLine) + " no longer fails to lex");
+    }
+
+    public Parser.ParserException getParseError() { // the first syntax error, null while there is a lexical error
+        if (root == null || root.lexicalErrors > 0 || root.parseErrors == 0) {
+            return null;
+        }
+        Segment node = root;
+        while (true) {
+            if (node.left != null && node.left.parseErrors > 0) {
+                node = node.left;
+            } else if (node.parseError != null) {
+                return node.parseError;
+            } else {
+                node = node.right;
+            }
+        }
+    }
+
+    public Node getAST() { // null while the document has a lexical or syntax error
+        if (root != null && (root.lexicalErrors > 0 || root.parseErrors > 0)) {
+            return null;
+        }
+        Node programNode = new Node("Program");
+        for (Segment segment : inOrder(root)) {
+            for (Node form : segment.forms) {
+                programNode.addChild(form);
+            }
+        }
+        return programNode;
+    }
+}
@@ -0,0 +1,544 @@
+import java.util.ArrayList;
+import java.util.List;
+
+public class IterativeParser {
+    private static final int TOP_LEVEL_FORM = 0; // frame kinds, one per production that calls expression()
+    private static final int EXPRESSION = 1;
+    private static final int STATEMENTS = 2;
+    private static final int FUN_CALL = 3;
+    private static final int LET = 4;
+    private static final int COND = 5;
+    private static final int IF = 6;
+    private static final int BEGIN = 7;
+    private static final int AFTER_LEFTPAR = 4; // TopLevelForm step for a form whose ( recovery already consumed
+
+    private static class Frame {
+        int kind;
+        int step;
+        Node node;
+        Node aux;
+        Node nameNode;
+        final List<Node> items = new ArrayList<>();
+    }
+
+    private TokenCursor cursor;
+    private SymbolTable symbols;
+    private Node ast;
+    private Frame[] stack = new Frame[64];
+    private int depth;
+    private Node result; // value returned by the frame that was just popped
+    private int parens; // parentheses matched and not yet closed, for recovery
+    private List<Diagnostic> diagnostics; // set while parsing with recovery
+    private int lastLineNumber;
+    private int lastColumnNumber;
+
+    public IterativeParser(List<Lexeme> lexemes) {
+        this(TokenCursor.of(lexemes));
+    }
+
+    public IterativeParser(List<Lexeme> lexemes, SymbolTable symbols) { // lexemes must have been interned into the same table
+        this(TokenCursor.of(lexemes));
+        this.symbols = symbols;
+    }
+
+    public IterativeParser(TokenBuffer tokens) {
+        this(tokens.cursor());
+        this.symbols = tokens.getSymbolTable();
+    }
+
+    public IterativeParser(TokenCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    public void reset(List<Lexeme> lexemes) {
+        reset(TokenCursor.of(lexemes));
+    }
+
+    public void reset(TokenBuffer tokens) {
+        reset(tokens.cursor());
+        this.symbols = tokens.getSymbolTable();
+    }
+
+    public void reset(TokenCursor cursor) { // parse another input, the frame stack is kept for reuse
+        this.cursor = cursor;
+        this.symbols = null;
+        this.ast = null;
+        this.result = null;
+        this.parens = 0;
+        this.diagnostics = null;
+        for (int i = 0; i < depth; i++) { // a failed parse can leave frames holding nodes
+            stack[i].node = null;
+            stack[i].aux = null;
+            stack[i].nameNode = null;
+            stack[i].items.clear();
+        }
+        this.depth = 0;
+    }
+
+    private Node valueNode(String label) { // identifiers share one interned name when a symbol table is in use
+        if (symbols != null && getCurrentToken() == Token.IDENTIFIER) {
+            int symbol = cursor.symbol();
+            return new Node(label, symbols, symbol >= 0 ? symbol : symbols.intern(cursor.value()));
+        }
+        return new Node(label, cursor.value());
+    }
+
+    private Token getCurrentToken() {
+        return cursor.token();
+    }
+
+    private void nextToken() {
+        if (diagnostics != null) {
+            lastLineNumber = cursor.lineNumber();
+            lastColumnNumber = cursor.columnNumber();
+        }
+        cursor.advance();
+        if (diagnostics != null) {
+            skipInvalid();
+        }
+    }
+
+    private void skipInvalid() { // the lexer already reported these
+        while (getCurrentToken() == Token.INVALID) {
+            cursor.advance();
+        }
+    }
+
+    private void match(Token expectedToken) throws Parser.ParserException {
+        Token current = getCurrentToken();
+        if (current == expectedToken) {
+            if (current == Token.LEFTPAR) {
+                parens++;
+            } else if (current == Token.RIGHTPAR) {
+                parens--;
+            }
+            nextToken();
+        } else {
+            throw new Parser.ParserException("Syntax Error: expected " + expectedToken.name() + " but found " + (current != null ? current.name() : "EOF"));
+        }
+    }
+
+    private static String describe(Token token) {
+        return token != null ? token.name() : "EOF";
+    }
+
+    public void parse() throws Parser.ParserException {
+        Node programNode = new Node("Program");
+        while (getCurrentToken() != null) {
+            push(TOP_LEVEL_FORM);
+            run();
+            programNode.addChild(result);
+        }
+        ast = programNode;
+        if (getCurrentToken() != null) {
+            throw new Parser.ParserException("Syntax Error: unexpected token " + getCurrentToken().name());
+        }
+    }
+
+    public List<Diagnostic> parseWithRecovery() { // same diagnostics and partial AST as Parser.parseWithRecovery, at any nesting depth
+        diagnostics = new ArrayList<>();
+        skipInvalid();
+        Node programNode = new Node("Program");
+        boolean insideForm = false;
+        while (getCurrentToken() != null) {
+            try {
+                push(TOP_LEVEL_FORM);
+                if (insideForm) {
+                    stack[0].step = AFTER_LEFTPAR;
+                }
+                run();
+                programNode.addChild(result);
+                insideForm = false;
+            } catch (Parser.ParserException e) {
+                if (getCurrentToken() != null) {
+                    diagnostics.add(new Diagnostic(e.getMessage(), cursor.lineNumber(), cursor.columnNumber()));
+                } else {
+                    diagnostics.add(new Diagnostic(e.getMessage(), lastLineNumber, lastColumnNumber));
+                }
+                insideForm = resynchronize();
+            }
+        }
+        ast = programNode;
+        return diagnostics;
+    }
+
+    private boolean resynchronize() { // skip to the RIGHTPAR closing the broken form, true if a new "(define" was entered instead
+        if (parens == 0) { // the form never opened, drop tokens up to the next (
+            while (getCurrentToken() != null && getCurrentToken() != Token.LEFTPAR) {
+                nextToken();
+            }
+            return false;
+        }
+        while (getCurrentToken() != null) {
+            Token current = getCurrentToken();
+            nextToken();
+            if (current == Token.LEFTPAR) {
+                if (getCurrentToken() == Token.DEFINE) { // definitions only appear at the top level
+                    parens = 1;
+                    return true;
+                }
+                parens++;
+            } else if (current == Token.RIGHTPAR && --parens == 0) {
+                return false;
+            }
+        }
+        parens = 0;
+        return false;
+    }
+
+    public Node getAST() {
+        return ast;
+    }
+
+    private void push(int kind) {
+        if (depth == stack.length) {
+            Frame[] grown = new Frame[depth * 2];
+            System.arraycopy(stack, 0, grown, 0, depth);
+            stack = grown;
+        }
+        Frame frame = stack[depth];
+        if (frame == null) { // frames are reused between calls
+            frame = new Frame();
+            stack[depth] = frame;
+        }
+        frame.kind = kind;
+        frame.step = 0;
+        frame.node = null;
+        frame.aux = null;
+        frame.nameNode = null;
+        frame.items.clear();
+        depth++;
+    }
+
+    private void call(Frame caller, int nextStep, int kind) {
+        caller.step = nextStep;
+        push(kind);
+    }
+
+    private void callExpression(Frame caller, int nextStep) { // literals are answered in place, no frame needed
+        Token current = getCurrentToken();
+        if (current != null && (current.isLiteral() || current == Token.IDENTIFIER)) {
+            result = valueNode("Literal");
+            nextToken();
+            caller.step = nextStep;
+        } else {
+            call(caller, nextStep, EXPRESSION);
+        }
+    }
+
+    private void ret(Node node) {
+        result = node;
+        depth--;
+    }
+
+    private void run() throws Parser.ParserException { // each step either calls a child frame or returns
+        try {
+            while (depth > 0) {
+                Frame frame = stack[depth - 1];
+                switch (frame.kind) {
+                    case TOP_LEVEL_FORM:
+                        topLevelForm(frame);
+                        break;
+                    case EXPRESSION:
+                        expression(frame);
+                        break;
+                    case STATEMENTS:
+                        statements(frame);
+                        break;
+                    case FUN_CALL:
+                        funCall(frame);
+                        break;
+                    case LET:
+                        letExpr(frame);
+                        break;
+                    case COND:
+                        condBranches(frame);
+                        break;
+                    case IF:
+                        ifExpression(frame);
+                        break;
+                    case BEGIN:
+                        beginExpression(frame);
+                        break;
+                    default:
+                        throw new IllegalStateException("Unknown frame kind " + frame.kind);
+                }
+            }
+        } finally {
+            depth = 0;
+        }
+    }
+
+    private void topLevelForm(Frame frame) throws Parser.ParserException {
+        switch (frame.step) {
+            case 0:
+            case AFTER_LEFTPAR:
+                if (frame.step == 0) {
+                    match(Token.LEFTPAR);
+                }
+                frame.node = new Node("TopLevelForm");
+                Token current = getCurrentToken();
+                if (current == Token.DEFINE) { // definition
+                    match(Token.DEFINE);
+                    current = getCurrentToken();
+                    if (current == Token.IDENTIFIER) {
+                        frame.aux = valueNode("Identifier");
+                        nextToken();
+                        callExpression(frame, 1);
+                    } else if (current == Token.LEFTPAR) {
+                        match(Token.LEFTPAR);
+                        match(Token.IDENTIFIER);
+                        frame.aux = argList();
+                        match(Token.RIGHTPAR);
+                        call(frame, 2, STATEMENTS);
+                    } else {
+                        throw new Parser.ParserException("Syntax Error: expected IDENTIFIER or ( but found " + describe(current));
+                    }
+                } else if (current == Token.LEFTPAR) {
+                    call(frame, 3, FUN_CALL);
+                } else {
+                    throw new Parser.ParserException("Syntax Error: expected DEFINE or ( but found " + describe(current));
+                }
+                break;
+            case 1:
+            case 2:
+                Node definitionRightNode = new Node("DefinitionRight");
+                definitionRightNode.addChild(frame.aux);
+                definitionRightNode.addChild(result);
+                frame.node.addChild(definitionRightNode);
+                match(Token.RIGHTPAR);
+                ret(frame.node);
+                break;
+            default:
+                frame.node.addChild(result);
+                match(Token.RIGHTPAR);
+                ret(frame.node);
+                break;
+        }
+    }
+
+    private Node argList() throws Parser.ParserException { // identifiers end up in reverse, as in Parser.argList
+        List<Node> identifiers = new ArrayList<>();
+        while (getCurrentToken() == Token.IDENTIFIER) {
+            identifiers.add(valueNode("Identifier"));
+            nextToken();
+        }
+        Token current = getCurrentToken();
+        if (current != null && current != Token.RIGHTPAR) {
+            throw new Parser.ParserException("Syntax Error: expected IDENTIFIER or ) but found " + current.name());
+        }
+        Node argListNode = new Node("ArgList");
+        for (int i = identifiers.size() - 1; i >= 0; i--) {
+            argListNode.addChild(identifiers.get(i));
+        }
+        return argListNode;
+    }
+
+    private void statements(Frame frame) {
+        switch (frame.step) {
+            case 0:
+                frame.node = new Node("Statements");
+                frame.step = 1;
+                break;
+            case 1:
+                if (getCurrentToken() != null && getCurrentToken() != Token.RIGHTPAR) {
+                    callExpression(frame, 2);
+                } else {
+                    ret(frame.node);
+                }
+                break;
+            default:
+                frame.node.addChild(result);
+                frame.step = 1;
+                break;
+        }
+    }
+
+    private void expression(Frame frame) throws Parser.ParserException {
+        if (frame.step == 1) {
+            Node exprNode = result;
+            match(Token.RIGHTPAR);
+            ret(exprNode);
+            return;
+        }
+        Token current = getCurrentToken();
+        if (current != null && (current.isLiteral() || current == Token.IDENTIFIER)) {
+            Node literalNode = valueNode("Literal");
+            nextToken();
+            ret(literalNode);
+        } else if (current == Token.LEFTPAR) {
+            match(Token.LEFTPAR);
+            current = getCurrentToken();
+            if (current == Token.LET) { // expr
+                call(frame, 1, LET);
+            } else if (current == Token.COND) {
+                call(frame, 1, COND);
+            } else if (current == Token.IF) {
+                call(frame, 1, IF);
+            } else if (current == Token.BEGIN) {
+                call(frame, 1, BEGIN);
+            } else if (current == Token.IDENTIFIER) {
+                call(frame, 1, FUN_CALL);
+            } else {
+                throw new Parser.ParserException("Syntax Error: unexpected token " + describe(current));
+            }
+        } else {
+            throw new Parser.ParserException("Syntax Error: unexpected token " + describe(current));
+        }
+    }
+
+    private void funCall(Frame frame) throws Parser.ParserException {
+        switch (frame.step) {
+            case 0:
+                match(Token.IDENTIFIER);
+                frame.node = new Node("FunCall");
+                frame.node.addChild(valueNode("Identifier"));
+                frame.step = 1;
+                break;
+            case 1: // expressions
+                Token current = getCurrentToken();
+                if (current != null && (current.isLiteral() || current == Token.IDENTIFIER || current == Token.LEFTPAR)) {
+                    callExpression(frame, 2);
+                } else {
+                    ret(frame.node);
+                }
+                break;
+            default:
+                frame.node.addChild(result);
+                frame.step = 1;
+                break;
+        }
+    }
+
+    private void letExpr(Frame frame) throws Parser.ParserException {
+        switch (frame.step) {
+            case 0:
+                match(Token.LET);
+                Token current = getCurrentToken();
+                if (current == Token.LEFTPAR) {
+                    match(Token.LEFTPAR);
+                } else if (current == Token.IDENTIFIER) {
+                    frame.nameNode = valueNode("Identifier");
+                    match(Token.IDENTIFIER);
+                    match(Token.LEFTPAR);
+                } else {
+                    throw new Parser.ParserException("Syntax Error: expected ( or IDENTIFIER but found " + describe(current));
+                }
+                frame.step = 1;
+                break;
+            case 1: // varDefs
+                current = getCurrentToken();
+                if (current == Token.LEFTPAR) {
+                    match(Token.LEFTPAR);
+                    match(Token.IDENTIFIER);
+                    callExpression(frame, 2);
+                } else if (current != null && current != Token.RIGHTPAR) {
+                    throw new Parser.ParserException("Syntax Error: expected ( or ) but found " + current.name());
+                } else {
+                    frame.aux = varDefs(frame.items);
+                    match(Token.RIGHTPAR);
+                    call(frame, 3, STATEMENTS);
+                }
+                break;
+            case 2:
+                frame.items.add(result);
+                match(Token.RIGHTPAR);
+                frame.step = 1;
+                break;
+            default:
+                Node letExprNode = new Node("LetExpr");
+                if (frame.nameNode != null) {
+                    letExprNode.addChild(frame.nameNode);
+                }
+                letExprNode.addChild(frame.aux);
+                letExprNode.addChild(result);
+                ret(letExprNode);
+                break;
+        }
+    }
+
+    private static Node varDefs(List<Node> expressions) { // same shape as Parser.varDefs: VarDef with the values reversed
+        if (expressions.isEmpty()) {
+            return new Node("VarDefs");
+        }
+        Node varDefNode = new Node("VarDef");
+        for (int i = expressions.size() - 1; i >= 0; i--) {
+            varDefNode.addChild(expressions.get(i));
+        }
+        return varDefNode;
+    }
+
+    private void condBranches(Frame frame) throws Parser.ParserException {
+        switch (frame.step) {
+            case 0:
+                match(Token.COND);
+                frame.step = 1;
+                break;
+            case 1:
+                Token current = getCurrentToken();
+                if (current == Token.LEFTPAR) {
+                    match(Token.LEFTPAR);
+                    callExpression(frame, 2);
+                } else if (current != null && current != Token.RIGHTPAR) {
+                    throw new Parser.ParserException("Syntax Error: expected ( or ) but found " + current.name());
+                } else {
+                    Node branches = new Node("CondBranches");
+                    for (int i = frame.items.size() - 2; i >= 0; i -= 2) { // nest the branches back to front
+                        Node condBranchNode = new Node("CondBranch");
+                        condBranchNode.addChild(frame.items.get(i));
+                        condBranchNode.addChild(frame.items.get(i + 1));
+                        condBranchNode.addChild(branches);
+                        branches = condBranchNode;
+                    }
+                    ret(branches);
+                }
+                break;
+            case 2:
+                frame.items.add(result);
+                call(frame, 3, STATEMENTS);
+                break;
+            default:
+                frame.items.add(result);
+                match(Token.RIGHTPAR);
+                frame.step = 1;
+                break;
+        }
+    }
+
+    private void ifExpression(Frame frame) throws Parser.ParserException {
+        switch (frame.step) {
+            case 0:
+                match(Token.IF);
+                frame.node = new Node("IfExpression");
+                callExpression(frame, 1);
+                break;
+            case 1:
+                frame.node.addChild(result);
+                callExpression(frame, 2);
+                break;
+            case 2:
+                frame.node.addChild(result);
+                if (getCurrentToken() != null && getCurrentToken() != Token.RIGHTPAR) {
+                    callExpression(frame, 3);
+                } else {
+                    ret(frame.node);
+                }
+                break;
+            default:
+                frame.node.addChild(result);
+                ret(frame.node);
+                break;
+        }
+    }
+
+    private void beginExpression(Frame frame) throws Parser.ParserException {
+        if (frame.step == 0) {
+            match(Token.BEGIN);
+            frame.node = new Node("BeginExpression");
+            call(frame, 1, STATEMENTS);
+        } else {
+            frame.node.addChild(result);
+            ret(frame.node);
+        }
+    }
+}
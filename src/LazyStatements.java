@@ -0,0 +1,58 @@
+import java.util.List;
+
+public class LazyStatements extends Node { // a function body kept as a token span until someone looks inside
+    private final TokenBuffer tokens;
+    private final int start;
+    private final int end;
+    private volatile boolean parsed; // written last, after the children, so a reader that sees it sees them too
+
+    public LazyStatements(TokenBuffer tokens, int start, int end) { // the tokens must not be reset while the tree is in use
+        super(NodeKind.STATEMENTS.getLabel());
+        this.tokens = tokens;
+        this.start = start;
+        this.end = end;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    @Override
+    public boolean isParsed() {
+        return parsed;
+    }
+
+    @Override
+    public List<Node> getChildren() {
+        if (!parsed) {
+            parse();
+        }
+        return super.getChildren();
+    }
+
+    @Override
+    public void addChild(Node child) {
+        getChildren();
+        super.addChild(child);
+    }
+
+    private synchronized void parse() { // at most one thread parses, the rest wait for its result
+        if (parsed) {
+            return;
+        }
+        Node statements;
+        try {
+            statements = new Parser(tokens, start).parseStatements();
+        } catch (Parser.ParserException e) { // the outer parse only checked that the parens balance
+            throw new IllegalStateException("Function body at token " + start + ": " + e.getMessage(), e);
+        }
+        for (Node child : statements.getChildren()) {
+            super.addChild(child);
+        }
+        parsed = true;
+    }
+}
@@ -3,6 +3,11 @@ public class Lexeme {
     private String value;
     private int lineNumber;
     private int columnNumber;
+    private volatile CharSequence source; // set until the value is first asked for, cleared only after value is written
+    private int start;
+    private int end;
+    private SymbolTable symbols; // set for interned identifiers, the text is resolved through the table
+    private int symbol = -1;
 
     public Lexeme(Token token, String value, int lineNumber, int columnNumber) {
         this.token = token;
@@ -11,6 +16,23 @@ public class Lexeme {
         this.columnNumber = columnNumber;
     }
 
+    public Lexeme(Token token, CharSequence source, int start, int end, int lineNumber, int columnNumber) {
+        this.token = token;
+        this.source = source;
+        this.start = start;
+        this.end = end;
+        this.lineNumber = lineNumber;
+        this.columnNumber = columnNumber;
+    }
+
+    public Lexeme(Token token, SymbolTable symbols, int symbol, int lineNumber, int columnNumber) {
+        this.token = token;
+        this.symbols = symbols;
+        this.symbol = symbol;
+        this.lineNumber = lineNumber;
+        this.columnNumber = columnNumber;
+    }
+
     // Getters and setters for the fields
 
     public Token getToken() {
@@ -22,11 +44,31 @@ public class Lexeme {
     }
 
     public String getValue() {
-        return value;
+        if (symbols != null) {
+            return symbols.name(symbol);
+        }
+        String text = value;
+        if (text == null) {
+            CharSequence pending = source; // read once, another thread may clear it
+            if (pending == null) { // cleared after the value was written, or there never was a source
+                return value;
+            }
+            text = pending.subSequence(start, end).toString(); // materialize the text lazily from the source buffer
+            value = text;
+            source = null;
+        }
+        return text;
     }
 
     public void setValue(String value) {
         this.value = value;
+        this.source = null;
+        this.symbols = null;
+        this.symbol = -1;
+    }
+
+    public int getSymbol() { // -1 unless the lexeme was interned
+        return symbol;
     }
 
     public int getLineNumber() {
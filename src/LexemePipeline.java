@@ -0,0 +1,177 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.concurrent.locks.LockSupport;
+
+public class LexemePipeline implements TokenCursor, Closeable { // lexer thread -> single-producer single-consumer ring -> parser
+    private static final int DEFAULT_CAPACITY = 1 << 14;
+    private static final int BATCH_SIZE = 256; // indexes are published once per batch, not per lexeme
+
+    private final LexemeReader reader;
+    private final Lexeme[] ring;
+    private final int mask;
+    private volatile long head; // next slot the parser will read, everything before it may be overwritten
+    private volatile long tail; // next slot the lexer will write, everything before it is readable
+    private volatile boolean done;
+    private volatile boolean closed;
+    private volatile Throwable error;
+
+    private long writeIndex; // producer side
+    private long readIndex;  // consumer side
+    private long cachedTail;
+    private boolean primed;
+    private Lexeme current;
+
+    private LexemePipeline(LexemeReader reader, int capacity) {
+        this.reader = reader;
+        this.ring = new Lexeme[Integer.highestOneBit(Math.max(capacity, BATCH_SIZE) - 1) << 1];
+        this.mask = ring.length - 1;
+    }
+
+    public static LexemePipeline start(Lexical_Analyzer analyzer, Reader reader) {
+        return start(analyzer, reader, DEFAULT_CAPACITY);
+    }
+
+    public static LexemePipeline start(Lexical_Analyzer analyzer, Reader reader, int capacity) { // capacity bounds the lexemes in flight
+        LexemePipeline pipeline = new LexemePipeline(analyzer.stream(reader), capacity);
+        Thread lexer = new Thread(pipeline::produce, "lexeme-pipeline");
+        lexer.setDaemon(true);
+        lexer.start();
+        return pipeline;
+    }
+
+    private void produce() {
+        try (LexemeReader lexemes = reader) {
+            long cachedHead = 0;
+            Lexeme lexeme;
+            while ((lexeme = lexemes.nextLexeme()) != null) {
+                if (writeIndex - cachedHead == ring.length) {
+                    tail = writeIndex; // publish before waiting so the parser can't wait on us too
+                    int spins = 0;
+                    while (writeIndex - (cachedHead = head) == ring.length) {
+                        if (closed) {
+                            return;
+                        }
+                        pause(spins++);
+                    }
+                }
+                ring[(int) writeIndex & mask] = lexeme;
+                writeIndex++;
+                if ((writeIndex & (BATCH_SIZE - 1)) == 0) {
+                    tail = writeIndex;
+                    if (closed) {
+                        return;
+                    }
+                }
+            }
+        } catch (Throwable e) { // anything that stops the lexer must reach the parser, or it would see a clean end of input
+            error = e;
+        } finally {
+            tail = writeIndex;
+            done = true;
+        }
+    }
+
+    private Lexeme take() {
+        if (readIndex == cachedTail) {
+            head = readIndex; // hand back the slots we read before waiting
+            int spins = 0;
+            while ((cachedTail = tail) == readIndex) {
+                if (done && tail == readIndex) {
+                    rethrowUnchecked();
+                    return null; // a lexical or read error is left for awaitLexer
+                }
+                pause(spins++);
+            }
+        }
+        Lexeme lexeme = ring[(int) readIndex & mask];
+        ring[(int) readIndex & mask] = null; // don't keep consumed lexemes alive, cleared before head hands the slot back
+        readIndex++;
+        if ((readIndex & (BATCH_SIZE - 1)) == 0) {
+            head = readIndex;
+        }
+        return lexeme;
+    }
+
+    private void rethrowUnchecked() {
+        Throwable failure = error;
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null && !(failure instanceof IOException) && !(failure instanceof LexicalException)) {
+            throw new IllegalStateException("Lexer failed: " + failure, failure);
+        }
+    }
+
+    private static void pause(int spins) { // spin briefly, then back off so a busy core is left to the other stage
+        if (spins < 64) {
+            Thread.onSpinWait();
+        } else if (spins < 128) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(20_000);
+        }
+    }
+
+    private Lexeme current() {
+        if (!primed) {
+            current = take();
+            primed = true;
+        }
+        return current;
+    }
+
+    @Override
+    public Token token() {
+        Lexeme lexeme = current();
+        return lexeme != null ? lexeme.getToken() : null;
+    }
+
+    @Override
+    public String value() {
+        Lexeme lexeme = current();
+        return lexeme != null ? lexeme.getValue() : null;
+    }
+
+    @Override
+    public int lineNumber() {
+        Lexeme lexeme = current();
+        return lexeme != null ? lexeme.getLineNumber() : 0;
+    }
+
+    @Override
+    public int columnNumber() {
+        Lexeme lexeme = current();
+        return lexeme != null ? lexeme.getColumnNumber() : 0;
+    }
+
+    @Override
+    public int symbol() {
+        Lexeme lexeme = current();
+        return lexeme != null ? lexeme.getSymbol() : -1;
+    }
+
+    @Override
+    public void advance() {
+        current();
+        current = take();
+    }
+
+    public void awaitLexer() throws IOException, LexicalException { // drains what the parser left unread, then rethrows a lexer failure
+        primed = true;
+        current = null;
+        while (take() != null) {
+        }
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error instanceof LexicalException) {
+            throw (LexicalException) error;
+        }
+    }
+
+    @Override
+    public void close() { // lets the lexer thread stop early if the parser gave up
+        closed = true;
+    }
+}
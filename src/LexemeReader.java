@@ -0,0 +1,91 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+public class LexemeReader implements Closeable {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Lexical_Analyzer analyzer;
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder line = new StringBuilder();
+    private int position;
+    private int limit;
+    private int lineNumber;
+    private boolean skipLineFeed;
+    private final List<Lexeme> lineLexemes = new ArrayList<>(); // reused for every line
+    private Iterator<Lexeme> pending = Collections.emptyIterator();
+
+    public LexemeReader(Lexical_Analyzer analyzer, Reader reader) {
+        this.analyzer = analyzer;
+        this.reader = reader;
+    }
+
+    public LexemeReader(Lexical_Analyzer analyzer, ReadableByteChannel channel, Charset charset) {
+        this(analyzer, Channels.newReader(channel, charset));
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public Lexeme nextLexeme() throws IOException, LexicalException {
+        while (!pending.hasNext()) { // pull the next line only when the current one is drained
+            if (!readLine()) {
+                return null;
+            }
+            lineNumber++;
+            lineLexemes.clear();
+            analyzer.analyzeLine(lineNumber, line.toString().strip(), lineLexemes);
+            pending = lineLexemes.iterator();
+        }
+        return pending.next();
+    }
+
+    private boolean readLine() throws IOException {  // same line terminators as BufferedReader.readLine
+        line.setLength(0);
+        boolean found = false;
+        while (true) {
+            if (position >= limit) {
+                limit = reader.read(buffer, 0, BUFFER_SIZE);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return found;
+                }
+            }
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (buffer[position] == '\n') {
+                    position++;
+                    continue;
+                }
+            }
+            found = true;
+            int start = position;
+            while (position < limit) {
+                char c = buffer[position];
+                if (c == '\n' || c == '\r') {
+                    line.append(buffer, start, position - start);
+                    position++;
+                    skipLineFeed = c == '\r';
+                    return true;
+                }
+                position++;
+            }
+            line.append(buffer, start, position - start);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
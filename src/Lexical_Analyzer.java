@@ -1,9 +1,38 @@
+import java.io.Reader;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class Lexical_Analyzer {
+    private static final int DEFAULT_LINES_PER_CHUNK = 4096;
+    private static final Token[] TOKENS = Token.values();
+    private static final ThreadLocal<Automaton[]> SCRATCH_AUTOMATA = ThreadLocal.withInitial(() -> new Automaton[Automaton.Engine.values().length]); // one per engine and thread
+    private static final ThreadLocal<StructuralIndex> SCRATCH_INDEX = ThreadLocal.withInitial(StructuralIndex::new);
+
     private Map<String, Token> keywordsAndOperatorsMap;
+    private final Automaton.Engine engine;
+    private final SymbolTable symbols;
+    private volatile AnalysisListener listener; // null unless metrics are wanted
+
+    public Lexical_Analyzer() {
+        this(Automaton.Engine.TABLE);
+    }
+
+    public Lexical_Analyzer(Automaton.Engine engine) {
+        this(engine, null);
+    }
 
-    public Lexical_Analyzer() {  // define the keywords and operators
+    public Lexical_Analyzer(SymbolTable symbols) {
+        this(Automaton.Engine.TABLE, symbols);
+    }
+
+    public Lexical_Analyzer(Automaton.Engine engine, SymbolTable symbols) {  // define the keywords and operators
+        this.engine = engine;
+        this.symbols = symbols;
         this.keywordsAndOperatorsMap = new HashMap<>();
         keywordsAndOperatorsMap.put("(", Token.LEFTPAR);
         keywordsAndOperatorsMap.put(")", Token.RIGHTPAR);
@@ -24,8 +53,7 @@ public class Lexical_Analyzer {
             for (Map.Entry<Integer, String> entry : lines.entrySet()) { // analyze line by line and get the lexemes
                 int nLine = entry.getKey();
                 String line = entry.getValue();
-                Map<Integer, Lexeme> lexLine = analyzeLine(nLine, line.strip());
-                lexemes.addAll(lexLine.values());
+                analyzeLine(nLine, line.strip(), lexemes);
             }
         } catch (LexicalException e) { // if invalid token found, throw exception
             System.err.println(e.getMessage());
@@ -33,53 +61,365 @@ public class Lexical_Analyzer {
         }
         return lexemes;
     }
-    public Map<Integer, Lexeme> analyzeLine(int lineNumber, String line) throws LexicalException {
-        Automaton automaton = new Automaton();
-        Map<Integer, Lexeme> lineTokens = new TreeMap<>();
-        StringBuilder currentLexeme = new StringBuilder();
-        StringBuilder invalidLexeme = new StringBuilder();
-        int columnNumber = 1;
+
+    public List<Lexeme> analyzeCode(Map<Integer, String> lines, List<Diagnostic> diagnostics) { // recovering: invalid tokens are reported and lexing goes on
+        List<Lexeme> lexemes = new ArrayList<>();
+        try {
+            for (Map.Entry<Integer, String> entry : lines.entrySet()) {
+                analyzeLine(entry.getKey(), entry.getValue().strip(), lexemes, diagnostics);
+            }
+        } catch (LexicalException e) { // only thrown when not recovering
+            throw new IllegalStateException(e);
+        }
+        return lexemes;
+    }
+
+    public List<Lexeme> analyzeCodeParallel(Map<Integer, String> lines) throws LexicalException, InterruptedException {
+        return analyzeCodeParallel(lines, ForkJoinPool.commonPool(), DEFAULT_LINES_PER_CHUNK);
+    }
+
+    public List<Lexeme> analyzeCodeParallel(Map<Integer, String> lines, ExecutorService executor, int linesPerChunk) throws LexicalException, InterruptedException {
+        int[] lineNumbers = new int[lines.size()];
+        String[] lineTexts = new String[lines.size()];
+        int n = 0;
+        for (Map.Entry<Integer, String> entry : lines.entrySet()) { // snapshot the lines so chunks can index them
+            lineNumbers[n] = entry.getKey();
+            lineTexts[n] = entry.getValue();
+            n++;
+        }
+
+        List<Future<List<Lexeme>>> chunks = new ArrayList<>();
+        List<List<Lexeme>> results = new ArrayList<>();
+        int total = 0;
+        boolean collected = false;
+        try {
+            for (int from = 0; from < n; from += linesPerChunk) { // lines don't share automaton state, so chunks are independent
+                int start = from;
+                int end = Math.min(n, from + linesPerChunk);
+                chunks.add(executor.submit(() -> {
+                    List<Lexeme> chunkLexemes = new ArrayList<>();
+                    for (int i = start; i < end; i++) {
+                        analyzeLine(lineNumbers[i], lineTexts[i].strip(), chunkLexemes);
+                    }
+                    return chunkLexemes;
+                }));
+            }
+            for (Future<List<Lexeme>> chunk : chunks) { // collect in source order so the first error in the file wins
+                List<Lexeme> chunkLexemes = chunk.get();
+                results.add(chunkLexemes);
+                total += chunkLexemes.size();
+            }
+            collected = true;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof LexicalException) {
+                throw (LexicalException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (!collected) { // a lexical error, an interrupt or a rejected submit, nothing left running after we give up
+                for (Future<List<Lexeme>> chunk : chunks) {
+                    chunk.cancel(true);
+                }
+            }
+        }
+
+        List<Lexeme> lexemes = new ArrayList<>(total);
+        for (List<Lexeme> chunkLexemes : results) {
+            lexemes.addAll(chunkLexemes);
+        }
+        return lexemes;
+    }
+
+    public LexemeReader stream(Reader reader) { // pull lexemes one by one instead of lexing the whole input up front
+        return new LexemeReader(this, reader);
+    }
+
+    public LexemeReader stream(ReadableByteChannel channel, Charset charset) {
+        return new LexemeReader(this, channel, charset);
+    }
+
+    public Map<Integer, Lexeme> analyzeLine(int lineNumber, String line) throws LexicalException { // keyed by column, in column order
+        List<Lexeme> lexemes = new ArrayList<>();
+        analyzeLine(lineNumber, line, lexemes);
+        Map<Integer, Lexeme> lineTokens = new LinkedHashMap<>();
+        for (Lexeme lexeme : lexemes) {
+            lineTokens.put(lexeme.getColumnNumber(), lexeme);
+        }
+        return lineTokens;
+    }
+
+    public void analyzeLine(int lineNumber, String line, List<Lexeme> lexemes) throws LexicalException { // appends in source order, nothing to sort
+        analyzeLine(lineNumber, line, lexemes, null);
+    }
+
+    private void analyzeLine(int lineNumber, String line, List<Lexeme> lexemes, List<Diagnostic> diagnostics) throws LexicalException {
+        AnalysisListener listener = this.listener;
+        long allocatedBefore = listener != null ? AnalysisListener.allocatedBytes() : 0;
+        long start = listener != null ? System.nanoTime() : 0;
+        int firstLexeme = lexemes.size();
+        analyzeLine(line, 0, line.length(), lineNumber, lexemeSink(line, lexemes), diagnostics);
+        if (listener != null) {
+            long nanos = System.nanoTime() - start;
+            int[] tokenCounts = new int[TOKENS.length];
+            for (int i = firstLexeme; i < lexemes.size(); i++) {
+                tokenCounts[lexemes.get(i).getToken().ordinal()]++;
+            }
+            listener.sourceLexed(line.length(), tokenCounts, nanos, AnalysisListener.allocatedBytes() - allocatedBefore);
+        }
+    }
+
+    private TokenSink lexemeSink(String line, List<Lexeme> lexemes) {
+        return (token, start, end, nLine, columnNumber) -> {
+            if (symbols != null && token == Token.IDENTIFIER) { // identifiers share one interned name
+                lexemes.add(new Lexeme(token, symbols, symbols.intern(line, start, end), nLine, columnNumber));
+            } else {
+                lexemes.add(new Lexeme(token, line.substring(start, end), nLine, columnNumber));
+            }
+        };
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public void setListener(AnalysisListener listener) {
+        this.listener = listener;
+    }
+
+    public TokenBuffer analyzeSource(CharSequence source) throws LexicalException { // lex into a compact buffer, no Lexeme objects
+        TokenBuffer tokens = new TokenBuffer(source, symbols);
+        analyzeSource(source, tokens);
+        return tokens;
+    }
+
+    public TokenBuffer analyzeSource(CharSequence source, List<Diagnostic> diagnostics) { // recovering: invalid tokens are reported and lexing goes on
+        TokenBuffer tokens = new TokenBuffer(source, symbols);
+        analyzeSource(source, tokens, diagnostics);
+        return tokens;
+    }
+
+    public void analyzeSource(CharSequence source, TokenBuffer tokens, List<Diagnostic> diagnostics) {
+        try {
+            analyzeSource(source, 1, tokens, diagnostics);
+        } catch (LexicalException e) { // only thrown when not recovering
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void analyzeSource(CharSequence source, TokenBuffer tokens) throws LexicalException {
+        analyzeSource(source, 1, tokens);
+    }
+
+    public int analyzeSource(CharSequence source, int firstLineNumber, TokenBuffer tokens) throws LexicalException { // returns the next line number
+        return analyzeSource(source, firstLineNumber, tokens, null);
+    }
+
+    private int analyzeSource(CharSequence source, int firstLineNumber, TokenBuffer tokens, List<Diagnostic> diagnostics) throws LexicalException {
+        AnalysisListener listener = this.listener;
+        long allocatedBefore = listener != null ? AnalysisListener.allocatedBytes() : 0;
+        long start = listener != null ? System.nanoTime() : 0;
+        int firstToken = tokens.size();
+        int length = source.length();
+        int lineStart = 0;
+        int lineNumber = firstLineNumber;
+        TokenSink sink = (token, tokenStart, tokenEnd, tokenLine, tokenColumn) -> tokens.add(token, tokenStart, tokenEnd); // positions come from the line index
+        int nextLineFeed = -1; // next terminator of each kind at or after lineStart, MAX_VALUE once there are no more
+        int nextCarriageReturn = -1;
+        while (lineStart < length) { // split lines the same way BufferedReader.readLine does
+            if (nextLineFeed < lineStart) {
+                nextLineFeed = indexOf(source, '\n', lineStart, length);
+                nextLineFeed = nextLineFeed < 0 ? Integer.MAX_VALUE : nextLineFeed;
+            }
+            if (nextCarriageReturn < lineStart) {
+                nextCarriageReturn = indexOf(source, '\r', lineStart, length);
+                nextCarriageReturn = nextCarriageReturn < 0 ? Integer.MAX_VALUE : nextCarriageReturn;
+            }
+            int lineEnd = Math.min(length, Math.min(nextLineFeed, nextCarriageReturn));
+            int from = lineStart;
+            int to = lineEnd;
+            while (from < to && Character.isWhitespace(source.charAt(from))) { // same as line.strip()
+                from++;
+            }
+            while (to > from && Character.isWhitespace(source.charAt(to - 1))) {
+                to--;
+            }
+            if (from < to) {
+                tokens.startLine(lineNumber, from);
+                analyzeLine(source, from, to, lineNumber, sink, diagnostics);
+            }
+            lineNumber++;
+            lineStart = lineEnd + 1;
+            if (lineEnd + 1 < length && source.charAt(lineEnd) == '\r' && source.charAt(lineEnd + 1) == '\n') {
+                lineStart++;
+            }
+        }
+        if (listener != null) {
+            long nanos = System.nanoTime() - start;
+            int[] tokenCounts = new int[TOKENS.length];
+            for (int i = firstToken; i < tokens.size(); i++) {
+                tokenCounts[tokens.getToken(i).ordinal()]++;
+            }
+            listener.sourceLexed(length, tokenCounts, nanos, AnalysisListener.allocatedBytes() - allocatedBefore);
+        }
+        return lineNumber;
+    }
+
+    void analyzeLine(CharSequence text, int from, int to, int lineNumber, TokenSink sink) throws LexicalException {
+        analyzeLine(text, from, to, lineNumber, sink, null);
+    }
+
+    void analyzeLine(CharSequence text, int from, int to, int lineNumber, TokenSink sink, List<Diagnostic> diagnostics) throws LexicalException { // a null diagnostics list means stop at the first invalid token
+        StructuralIndex index = SCRATCH_INDEX.get();
+        index.index(text, from, to);
+        int i;
+        try {
+            i = analyzeTokens(text, from, to, lineNumber, sink, index);
+        } finally {
+            index.release();
+        }
+        if (i < to) {
+            analyzeLine(text, from, i, to, lineNumber, sink, diagnostics);
+        }
+    }
+
+    private int analyzeTokens(CharSequence text, int from, int to, int lineNumber, TokenSink sink, StructuralIndex index) { // start state, nothing pending: whole tokens come off the index, returns where the automaton has to take over
+        Automaton automaton = null;
+        int i = from;
+        while (true) {
+            while (i < to && (StructuralIndex.flags(text.charAt(i)) & StructuralIndex.WHITESPACE) != 0) { // runs are short, a lookup per char is enough
+                i++;
+            }
+            if (i == to) {
+                return to;
+            }
+            char c = text.charAt(i);
+            int flags = StructuralIndex.flags(c);
+            if ((flags & (StructuralIndex.LETTER | StructuralIndex.DIGIT)) != 0) {
+                boolean identifier = (flags & StructuralIndex.LETTER) != 0;
+                int end = index.nextDelimiter(i + 1);
+                if (identifier ? index.hasDigit(i + 1, end) : hasLetter(text, i + 1, end)) { // invalid word
+                    return i;
+                }
+                int next = end;
+                while (next < to && (StructuralIndex.flags(text.charAt(next)) & StructuralIndex.WHITESPACE) != 0) {
+                    next++;
+                }
+                if (next < to && (StructuralIndex.flags(text.charAt(next)) & StructuralIndex.STARTS_TOKEN) == 0) { // the automaton would pull what follows into this lexeme
+                    return i;
+                }
+                if (identifier && automaton == null) {
+                    automaton = scratchAutomaton();
+                }
+                sink.accept(identifier ? automaton.processIdentifier(text, i, end) : Token.NUMBER, i, end, lineNumber, i - from + 1);
+                i = next;
+            } else if (c == '(' || c == ')' || c == '[' || c == ']') {
+                sink.accept(c == '(' ? Token.LEFTPAR : c == ')' ? Token.RIGHTPAR : c == '[' ? Token.LEFTSQUAREB : Token.RIGHTSQUAREB, i, i + 1, lineNumber, i - from + 1);
+                i++;
+            } else if (c == ';') {
+                return to;
+            } else if (c == '"' || c == '#') {
+                int end = c == '"' ? stringEnd(text, i, to) : hashLiteralEnd(text, i, to);
+                Token literal = end < 0 ? Token.INVALID : c == '"' ? Token.STRING : hashLiteralToken(text, i, end);
+                if (literal == Token.INVALID) {
+                    return i;
+                }
+                sink.accept(literal, i, end, lineNumber, i - from + 1);
+                i = end;
+            } else {
+                return i;
+            }
+        }
+    }
+
+    private static boolean hasLetter(CharSequence text, int start, int end) { // numbers are short, no index needed
+        for (int i = start; i < end; i++) {
+            if ((StructuralIndex.flags(text.charAt(i)) & StructuralIndex.LETTER) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void analyzeLine(CharSequence text, int from, int start, int to, int lineNumber, TokenSink sink, List<Diagnostic> diagnostics) throws LexicalException { // char by char through the automaton, from start to the end of the line
+        Automaton automaton = scratchAutomaton();
+        StringBuilder invalidLexeme = null;
+        int lineLength = to - from;
+        int columnNumber = start - from + 1;
         int invalidTokenColumnNumber = columnNumber;
+        int lexemeStart = -1; // start offset of the pending identifier or number, -1 if none
+        int invalidStart = -1; // start offset of the pending invalid word when recovering
 
         boolean invalidTokenFlag = false;
-        for (char c : line.toCharArray()) { // read line char by char
+        for (int i = start; i < to; i++) { // read line char by char
+            char c = text.charAt(i);
             Token token = automaton.evaluate(c); // match the character with token
-            if (token == Token.NONE) {
-                currentLexeme.append(c);
+            if (invalidStart >= 0 && token != Token.INVALID) { // the automaton left its invalid state, so the word is over
+                emitInvalid(text, invalidStart, i, lineNumber, invalidStart - from + 1, sink, diagnostics);
+                invalidStart = -1;
+            }
+            if (token == Token.INVALID && diagnostics != null) { // recovering: the whole word becomes one INVALID token
+                if (invalidStart < 0) {
+                    invalidStart = lexemeStart >= 0 ? lexemeStart : i;
+                    lexemeStart = -1;
+                }
+            } else if (token == Token.NONE) {
+                if (lexemeStart < 0) {
+                    lexemeStart = i;
+                }
             } else { // process tokens and create current lexeme
-                if (currentLexeme.length() > 0) {
-                    String lexemeString = currentLexeme.toString().strip();
-                    if (!lexemeString.isEmpty()) {
-                        Token prevToken = Token.NONE;
-                        if (Character.isLetter(lexemeString.charAt(0))) {
-                            prevToken = automaton.processIdentifier(lexemeString);
-                        } else if (Character.isDigit(lexemeString.charAt(0))) {
-                            prevToken = Token.NUMBER;
+                if (lexemeStart >= 0) {
+                    if (!invalidTokenFlag) {
+                        emitLexeme(automaton, text, lexemeStart, i, lineNumber, from, sink);
+                    }
+                    lexemeStart = -1;
+                }
+                if (token == Token.COMMENT) { // the rest of the line is skipped without looking at it
+                    break;
+                }
+                if (token == Token.STRING || token == Token.CHAR) { // literal bodies are scanned in bulk, not char by char
+                    int end = token == Token.STRING ? stringEnd(text, i, to) : hashLiteralEnd(text, i, to);
+                    Token literal = end < 0 ? Token.INVALID : token == Token.STRING ? Token.STRING : hashLiteralToken(text, i, end);
+                    if (end < 0) { // unterminated string
+                        end = to;
+                    }
+                    if (literal != Token.INVALID) {
+                        if (!invalidTokenFlag) {
+                            sink.accept(literal, i, end, lineNumber, columnNumber);
                         }
-                        if (prevToken != Token.NONE) {
-                            lineTokens.put(columnNumber - lexemeString.length(), new Lexeme(prevToken, lexemeString, lineNumber, columnNumber - lexemeString.length()));
+                    } else if (diagnostics != null) {
+                        emitInvalid(text, i, end, lineNumber, columnNumber, sink, diagnostics);
+                    } else {
+                        invalidTokenFlag = true;
+                        if (invalidLexeme == null) {
+                            invalidLexeme = new StringBuilder();
                         }
+                        invalidLexeme.append(text, i, end);
+                        invalidTokenColumnNumber = columnNumber;
                     }
-                    currentLexeme.setLength(0);
-                }
-                if (token != Token.IDENTIFIER && token != Token.NUMBER) {
+                    columnNumber += end - 1 - i;
+                    i = end - 1;
+                    automaton.reset();
+                } else if (token != Token.IDENTIFIER && token != Token.NUMBER) {
                     if (token == Token.INVALID) {
                         invalidTokenFlag = true;
+                        if (invalidLexeme == null) {
+                            invalidLexeme = new StringBuilder();
+                        }
                         invalidLexeme.append(c);
 
                         if (invalidLexeme.length() > 0 && Character.isDigit(invalidLexeme.charAt(0))) {
                             token = Token.NUMBER;
                         }
-                        while (columnNumber < line.length() && !Character.isWhitespace(line.charAt(columnNumber)) && (automaton.evaluate(line.charAt(columnNumber)) == Token.NONE || token == Token.NUMBER)) {
-                            invalidLexeme.append(line.charAt(columnNumber));
+                        while (columnNumber < lineLength && !Character.isWhitespace(text.charAt(from + columnNumber)) && (automaton.evaluate(text.charAt(from + columnNumber)) == Token.NONE || token == Token.NUMBER)) {
+                            invalidLexeme.append(text.charAt(from + columnNumber));
                             columnNumber++;
                         }
                         invalidTokenColumnNumber = columnNumber;
-                    } else {
-                        lineTokens.put(columnNumber, new Lexeme(token, String.valueOf(c), lineNumber, columnNumber));
+                    } else if (!invalidTokenFlag) {
+                        sink.accept(token, i, i + 1, lineNumber, columnNumber);
                     }
                 } else {
-                    currentLexeme.append(c);
+                    lexemeStart = i;
                 }
             }
             columnNumber++;
@@ -88,20 +428,112 @@ public class Lexical_Analyzer {
         if (invalidTokenFlag) { // if inavlid token found, stop processing and throw an exception
             throw new LexicalException(String.format("LEXICAL ERROR [%d:%d]: Invalid token `%s'", lineNumber, invalidTokenColumnNumber, invalidLexeme));        }
 
-        if (currentLexeme.length() > 0) {
-            String lexemeString = currentLexeme.toString().strip();
-            if (!lexemeString.isEmpty()) {
-                Token lastToken = Token.NONE;
-                if (Character.isLetter(lexemeString.charAt(0))) {
-                    lastToken = automaton.processIdentifier(lexemeString);
-                } else if (Character.isDigit(lexemeString.charAt(0))) {
-                    lastToken = Token.NUMBER;
-                }
-                if (lastToken != Token.NONE) { // create lexeme for the output
-                    lineTokens.put(columnNumber - lexemeString.length(), new Lexeme(lastToken, lexemeString, lineNumber, columnNumber - lexemeString.length()));
-                }
+        if (invalidStart >= 0) {
+            emitInvalid(text, invalidStart, to, lineNumber, invalidStart - from + 1, sink, diagnostics);
+        }
+        if (lexemeStart >= 0) {
+            emitLexeme(automaton, text, lexemeStart, to, lineNumber, from, sink);
+        }
+    }
+
+    private static int stringEnd(CharSequence text, int start, int to) { // offset after the closing quote, -1 if the line ends first
+        int quote = start;
+        while (true) {
+            quote = indexOf(text, '"', quote + 1, to);
+            if (quote < 0) {
+                return -1;
+            }
+            int backslashes = 0;
+            while (text.charAt(quote - 1 - backslashes) == '\\') { // stops at the opening quote at the latest
+                backslashes++;
+            }
+            if ((backslashes & 1) == 0) {
+                return quote + 1;
             }
         }
-        return lineTokens;
     }
-}
\ No newline at end of file
+
+    private static int indexOf(CharSequence text, char c, int from, int to) {
+        if (text instanceof String) { // String.indexOf is an intrinsic that scans many chars per step
+            int found = ((String) text).indexOf(c, from);
+            return found < to ? found : -1;
+        }
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int hashLiteralEnd(CharSequence text, int start, int to) {
+        int end = start + 1;
+        if (end + 1 < to && text.charAt(end) == '\\') { // the escaped char may itself be a delimiter, as in #\(
+            end += 2;
+        }
+        while (end < to && !Automaton.isDelimiter(text.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static Token hashLiteralToken(CharSequence text, int start, int end) {
+        if (end - start >= 3 && text.charAt(start + 1) == '\\') {
+            return Token.CHAR;
+        }
+        if (regionEquals(text, start, end, "#t") || regionEquals(text, start, end, "#f") || regionEquals(text, start, end, "#true") || regionEquals(text, start, end, "#false")) {
+            return Token.BOOLEAN;
+        }
+        return Token.INVALID;
+    }
+
+    private static boolean regionEquals(CharSequence text, int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (text.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Automaton scratchAutomaton() { // lines never share automaton state, so each thread reuses one instead of allocating per line
+        Automaton[] automata = SCRATCH_AUTOMATA.get();
+        Automaton automaton = automata[engine.ordinal()];
+        if (automaton == null) {
+            automaton = new Automaton(engine);
+            automata[engine.ordinal()] = automaton;
+        } else {
+            automaton.reset();
+        }
+        return automaton;
+    }
+
+    private static void emitInvalid(CharSequence text, int start, int end, int lineNumber, int columnNumber, TokenSink sink, List<Diagnostic> diagnostics) {
+        sink.accept(Token.INVALID, start, end, lineNumber, columnNumber);
+        diagnostics.add(new Diagnostic("Lexical Error: Invalid token `" + text.subSequence(start, end) + "'", lineNumber, columnNumber));
+    }
+
+    private void emitLexeme(Automaton automaton, CharSequence text, int start, int end, int lineNumber, int lineStart, TokenSink sink) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) { // strip the pending lexeme without copying it
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (start == end) {
+            return;
+        }
+        Token token = Token.NONE;
+        if (Character.isLetter(text.charAt(start))) {
+            token = automaton.processIdentifier(text, start, end);
+        } else if (Character.isDigit(text.charAt(start))) {
+            token = Token.NUMBER;
+        }
+        if (token != Token.NONE) { // create lexeme for the output
+            sink.accept(token, start, end, lineNumber, start - lineStart + 1);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import java.util.Arrays;
+
+public class LineIndex { // where every line starts, so a token only has to remember its own offset
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] lineStarts; // ascending, offset of the first char the lexer looked at on the line
+    private int[] lineNumbers;
+    private int size;
+    private int lastLine; // lookups mostly walk forward through the source, so try the previous answer first
+
+    public LineIndex() {
+        this.lineStarts = new int[INITIAL_CAPACITY];
+        this.lineNumbers = new int[INITIAL_CAPACITY];
+    }
+
+    public void add(int lineNumber, int lineStart) { // lines must be added in source order
+        if (size == lineStarts.length) {
+            lineStarts = Arrays.copyOf(lineStarts, size * 2);
+            lineNumbers = Arrays.copyOf(lineNumbers, size * 2);
+        }
+        lineStarts[size] = lineStart;
+        lineNumbers[size] = lineNumber;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+        lastLine = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int lineNumber(int offset) {
+        int line = find(offset);
+        return line >= 0 ? lineNumbers[line] : 0;
+    }
+
+    public int columnNumber(int offset) {
+        int line = find(offset);
+        return line >= 0 ? offset - lineStarts[line] + 1 : 0;
+    }
+
+    private int find(int offset) { // last line starting at or before the offset, -1 if there is none
+        int line = lastLine;
+        if (line < size && lineStarts[line] <= offset && (line + 1 == size || offset < lineStarts[line + 1])) {
+            return line;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (lineStarts[middle] <= offset) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (high >= 0) {
+            lastLine = high;
+        }
+        return high;
+    }
+}
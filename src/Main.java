@@ -1,54 +1,38 @@
-import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.OutputStreamWriter;
+import java.util.Arrays;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && args[0].equals("--daemon")) { // stay resident and serve AnalysisClient requests
+            AnalysisDaemon.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0) { // a directory or manifest runs every file through the batch compiler
+            BatchCompiler.main(args);
+            return;
+        }
         String filePath = "src/input.txt";
 
-        try {
-            List<String> lines = readFile(filePath);
-
-            Map<Integer, String> input = createInputMap(lines);
-
-            Lexical_Analyzer lexicalAnalyzer = new Lexical_Analyzer();
-
-            List<Lexeme> lexemes = lexicalAnalyzer.analyzeCode(input);
-
+        try (LexemePipeline lexemes = LexemePipeline.start(new Lexical_Analyzer(), new FileReader(filePath))) { // lexing runs on its own thread, overlapping the parse
             Parser parser = new Parser(lexemes);
 
             try {
                 parser.parse();
+                lexemes.awaitLexer(); // a lexical error anywhere in the file still wins, like when lexing ran first
                 System.out.println("Parsing completed successfully.");
-                System.out.println(parser.getAST()); // Print the AST
+                new AstWriter(new OutputStreamWriter(System.out)).write(parser.getAST()); // Print the AST as it is walked
+                System.out.println();
             } catch (Parser.ParserException e) {
+                lexemes.awaitLexer();
                 System.err.println("Parsing Error: " + e.getMessage());
             }
+        } catch (LexicalException e) { // if invalid token found, stop like analyzeCode does
+            System.err.println(e.getMessage());
+            System.exit(1);
         } catch (IOException e) {
             System.err.println("Error reading the input file: " + e.getMessage());
         }
     }
-
-    private static List<String> readFile(String filePath) throws IOException {
-        List<String> lines = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                lines.add(line);
-            }
-        }
-        return lines;
-    }
-
-    private static Map<Integer, String> createInputMap(List<String> lines) {
-        Map<Integer, String> input = new HashMap<>();
-        for (int i = 0; i < lines.size(); i++) {
-            input.put(i + 1, lines.get(i));
-        }
-        return input;
-    }
 }
@@ -0,0 +1,217 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class MappedSource implements Closeable {
+    private static final int MAX_REGION_SIZE = Integer.MAX_VALUE;
+    private static final int MAX_DECODED_WINDOW = 16 << 20; // bytes of non-ASCII input decoded at once, at most twice that in chars on the heap
+    private static final long NON_ASCII_MASK = 0x8080808080808080L;
+
+    private final FileChannel channel;
+    private final List<CharSequence> regions;
+
+    private MappedSource(FileChannel channel, List<CharSequence> regions) {
+        this.channel = channel;
+        this.regions = regions;
+    }
+
+    public static MappedSource open(Path path) throws IOException {
+        return open(path, MAX_REGION_SIZE);
+    }
+
+    static MappedSource open(Path path, int maxRegionSize) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            List<CharSequence> regions = new ArrayList<>();
+            long position = 0;
+            while (position < size) { // a mapping is capped at 2GB, so split big files at line ends
+                long length = Math.min(maxRegionSize, size - position);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int end = (int) length;
+                if (position + length < size) {
+                    end = lineEnd(mapped, 0, end, end);
+                    if (end == 0) {
+                        throw new IOException("Line longer than " + maxRegionSize + " bytes at offset " + position);
+                    }
+                }
+                if (isAscii(slice(mapped, 0, end))) {
+                    regions.add(new AsciiSequence(slice(mapped, 0, end)));
+                } else {
+                    addWindows(mapped, end, regions);
+                }
+                position += end;
+            }
+            return new MappedSource(channel, Collections.unmodifiableList(regions));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static void addWindows(ByteBuffer region, int end, List<CharSequence> regions) { // non-ASCII text is decoded a window of whole lines at a time, never a whole region
+        int start = 0;
+        while (start < end) {
+            int windowEnd = end;
+            if (end - start > MAX_DECODED_WINDOW) {
+                windowEnd = lineEnd(region, start, start + MAX_DECODED_WINDOW, end);
+                if (windowEnd == start) { // one line longer than a window, the lexer needs it whole
+                    windowEnd = start + MAX_DECODED_WINDOW;
+                    while (windowEnd < end && lineEnd(region, windowEnd - 1, windowEnd, end) != windowEnd) {
+                        windowEnd++;
+                    }
+                }
+            }
+            ByteBuffer window = slice(region, start, windowEnd);
+            regions.add(isAscii(window) ? new AsciiSequence(window) : new DecodedWindow(window));
+            start = windowEnd;
+        }
+    }
+
+    private static int lineEnd(ByteBuffer bytes, int from, int end, int limit) { // the last line end in (from, end], from if there is none; a \r right before a \n is not one
+        while (end > from) {
+            byte b = bytes.get(end - 1);
+            if (b == '\n' || b == '\r' && end < limit && bytes.get(end) != '\n') {
+                return end;
+            }
+            end--;
+        }
+        return from;
+    }
+
+    private static ByteBuffer slice(ByteBuffer bytes, int start, int end) {
+        ByteBuffer slice = bytes.duplicate();
+        slice.position(start).limit(end);
+        return slice.slice();
+    }
+
+    private static boolean isAscii(ByteBuffer bytes) { // check eight bytes at a time for a set high bit
+        int limit = bytes.limit();
+        int i = 0;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            if ((bytes.getLong(i) & NON_ASCII_MASK) != 0) {
+                return false;
+            }
+        }
+        for (; i < limit; i++) {
+            if (bytes.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<CharSequence> getRegions() {
+        return regions;
+    }
+
+    public boolean isAscii() {
+        for (CharSequence region : regions) {
+            if (!(region instanceof AsciiSequence)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<Lexeme> analyze(Lexical_Analyzer analyzer) throws LexicalException { // lexeme text stays in the mapping until getValue()
+        List<Lexeme> lexemes = new ArrayList<>();
+        int lineNumber = 1;
+        for (CharSequence region : regions) {
+            TokenBuffer tokens = new TokenBuffer(region, analyzer.getSymbolTable());
+            lineNumber = analyzer.analyzeSource(region, lineNumber, tokens);
+            for (int i = 0; i < tokens.size(); i++) {
+                lexemes.add(tokens.getLexeme(i));
+            }
+        }
+        return lexemes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static class AsciiSequence implements CharSequence { // one char per byte, read straight from the mapping
+        private final ByteBuffer bytes;
+
+        AsciiSequence(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) bytes.get(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            ByteBuffer slice = bytes.duplicate();
+            slice.position(start).limit(end);
+            return new AsciiSequence(slice.slice());
+        }
+
+        @Override
+        public String toString() {
+            byte[] copy = new byte[bytes.limit()];
+            bytes.duplicate().get(copy);
+            return new String(copy, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private static class DecodedWindow implements CharSequence { // decoded on first use, the chars can be dropped under memory pressure and decoded again
+        private final ByteBuffer bytes;
+        private volatile SoftReference<CharBuffer> chars = new SoftReference<>(null);
+        private volatile int length = -1;
+
+        DecodedWindow(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        private CharBuffer decoded() {
+            CharBuffer decoded = chars.get();
+            if (decoded == null) {
+                decoded = StandardCharsets.UTF_8.decode(bytes.duplicate());
+                chars = new SoftReference<>(decoded);
+                length = decoded.remaining();
+            }
+            return decoded;
+        }
+
+        @Override
+        public int length() {
+            int decodedLength = length;
+            return decodedLength >= 0 ? decodedLength : decoded().remaining();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return decoded().get(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return decoded().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return decoded().toString();
+        }
+    }
+}
@@ -5,6 +5,8 @@ public class Node {
     private String label;
     private String value;
     private List<Node> children;
+    private SymbolTable symbols; // set for interned identifiers
+    private int symbol = -1;
 
     public Node(String label) {
         this.label = label;
@@ -18,18 +20,33 @@ public class Node {
         this.children = new ArrayList<>();
     }
 
+    public Node(String label, SymbolTable symbols, int symbol) {
+        this.label = label;
+        this.symbols = symbols;
+        this.symbol = symbol;
+        this.children = new ArrayList<>();
+    }
+
     public String getLabel() {
         return label;
     }
 
     public String getValue() {
-        return value;
+        return symbols != null ? symbols.name(symbol) : value;
+    }
+
+    public int getSymbol() { // -1 unless the value is an interned identifier
+        return symbol;
     }
 
     public List<Node> getChildren() {
         return children;
     }
 
+    public boolean isParsed() { // false while the children are still unparsed tokens
+        return true;
+    }
+
     public void addChild(Node child) {
         children.add(child);
     }
@@ -46,11 +63,12 @@ public class Node {
             builder.append("\t");
         }
         builder.append("<").append(label).append(">");
+        String value = getValue();
         if (value != null) {
             builder.append(" ").append(value);
         }
         builder.append("\n");
-        for (Node child : children) {
+        for (Node child : getChildren()) {
             child.buildString(builder, level + 1);
         }
     }
@@ -0,0 +1,46 @@
+public enum NodeKind {
+    PROGRAM("Program"),
+    TOP_LEVEL_FORM("TopLevelForm"),
+    DEFINITION_RIGHT("DefinitionRight"),
+    ARG_LIST("ArgList"),
+    STATEMENTS("Statements"),
+    IDENTIFIER("Identifier"),
+    LITERAL("Literal"),
+    FUN_CALL("FunCall"),
+    LET_EXPR("LetExpr"),
+    VAR_DEFS("VarDefs"),
+    VAR_DEF("VarDef"),
+    COND_BRANCH("CondBranch"),
+    COND_BRANCHES("CondBranches"),
+    IF_EXPRESSION("IfExpression"),
+    BEGIN_EXPRESSION("BeginExpression");
+
+    private static final NodeKind[] KINDS = values();
+
+    private final String label;
+
+    NodeKind(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public boolean isReversed() { // the tree has always listed these children last to first, parse events come in source order
+        return this == ARG_LIST || this == VAR_DEF;
+    }
+
+    static NodeKind of(int ordinal) {
+        return KINDS[ordinal];
+    }
+
+    public static NodeKind fromLabel(String label) {
+        for (NodeKind kind : KINDS) {
+            if (kind.label.equals(label)) {
+                return kind;
+            }
+        }
+        throw new IllegalArgumentException("Unknown node label " + label);
+    }
+}
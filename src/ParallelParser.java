@@ -0,0 +1,102 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class ParallelParser {
+    private static final int TOKENS_PER_TASK = 4096; // ranges smaller than this are parsed on one thread
+
+    private final TokenBuffer tokens;
+    private final ForkJoinPool pool;
+    private Node ast;
+
+    public ParallelParser(TokenBuffer tokens) {
+        this(tokens, ForkJoinPool.commonPool());
+    }
+
+    public ParallelParser(TokenBuffer tokens, ForkJoinPool pool) {
+        this.tokens = tokens;
+        this.pool = pool;
+    }
+
+    public void parse() throws Parser.ParserException {
+        int[] starts = formStarts();
+        int forms = starts.length - 1;
+        Node[] nodes = new Node[forms];
+        Parser.ParserException failure = forms > 0 ? pool.invoke(new FormTask(starts, nodes, 0, forms)) : null;
+        if (failure != null) { // same error the sequential parser would have stopped at
+            throw failure;
+        }
+        Node programNode = new Node("Program");
+        for (Node node : nodes) {
+            programNode.addChild(node);
+        }
+        if (starts[forms] < tokens.size()) { // whatever the pre-pass couldn't split is parsed in order, after every earlier form
+            Parser parser = new Parser(tokens, starts[forms]);
+            while (parser.hasMoreTokens()) {
+                programNode.addChild(parser.parseTopLevelForm());
+            }
+        }
+        ast = programNode;
+    }
+
+    public Node getAST() {
+        return ast;
+    }
+
+    private int[] formStarts() { // one entry per balanced top-level span, plus where the balanced spans end
+        List<Integer> starts = new ArrayList<>();
+        int size = tokens.size();
+        int i = 0;
+        while (i < size && tokens.getToken(i) == Token.LEFTPAR) { // a stray token at the top is left to one sequential parse
+            int close = tokens.getMatch(i);
+            if (close < 0) { // the last form never closes
+                break;
+            }
+            starts.add(i);
+            i = close + 1; // the lexer paired the parens, so each form is stepped over whole
+        }
+        starts.add(i);
+        int[] result = new int[starts.size()];
+        for (int k = 0; k < result.length; k++) {
+            result[k] = starts.get(k);
+        }
+        return result;
+    }
+
+    private class FormTask extends RecursiveTask<Parser.ParserException> { // returns the earliest error in its forms, null if all parsed
+        private static final long serialVersionUID = 1L;
+
+        private final int[] starts;
+        private final Node[] nodes;
+        private final int from;
+        private final int to;
+
+        FormTask(int[] starts, Node[] nodes, int from, int to) {
+            this.starts = starts;
+            this.nodes = nodes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Parser.ParserException compute() {
+            if (to - from > 1 && starts[to] - starts[from] > TOKENS_PER_TASK) { // split the forms in half and parse both sides at once
+                int middle = (from + to) >>> 1;
+                FormTask right = new FormTask(starts, nodes, middle, to);
+                right.fork();
+                Parser.ParserException left = new FormTask(starts, nodes, from, middle).compute();
+                Parser.ParserException rightFailure = right.join();
+                return left != null ? left : rightFailure; // the left half comes first in the source
+            }
+            for (int form = from; form < to; form++) { // a balanced span is exactly one form, if it parses at all
+                try {
+                    nodes[form] = new Parser(tokens, starts[form]).parseTopLevelForm();
+                } catch (Parser.ParserException e) {
+                    return e;
+                }
+            }
+            return null;
+        }
+    }
+}
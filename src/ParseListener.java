@@ -0,0 +1,25 @@
+public interface ParseListener { // the parse as a stream of events, nothing is built unless the listener builds it
+    interface Locator { // where the parser is, only meaningful during a callback
+        int getLineNumber();
+
+        int getColumnNumber();
+    }
+
+    default void setLocator(Locator locator) { // called once before the first event, positions are looked up only when asked for
+    }
+
+    default void enterNode(NodeKind kind) { // the locator points at the first token still ahead of the parser
+    }
+
+    default void exitNode(NodeKind kind) {
+    }
+
+    default void leaf(NodeKind kind, Token token, String value, int symbol) { // the locator points at the token, symbol is -1 unless interned
+    }
+
+    default void bodySkipped(TokenBuffer tokens, int start, int end) { // lazy bodies: the Statements of a function body was not parsed, its tokens are [start, end)
+    }
+
+    default void syntaxError(Diagnostic diagnostic) { // recovering: nodes entered since the broken top-level form began are never exited
+    }
+}
@@ -1,279 +1,592 @@
+import java.util.ArrayList;
 import java.util.List;
 
 public class Parser {
 
-    private List<Lexeme> lexemes;
-    private int currentIndex;
+    private TokenCursor cursor;
+    private SymbolTable symbols;
+    private int position;
     private Node ast;
+    private int depth; // parentheses matched and not yet closed
+    private List<Diagnostic> diagnostics; // set while parsing with recovery
+    private int lastLineNumber;
+    private int lastColumnNumber;
+    private volatile AnalysisListener listener; // null unless metrics are wanted, may be set from another thread
+    private AnalysisListener metrics; // the listener as it was when the current parse started, so every entered production is also exited
+    private int nesting; // productions currently open, only tracked for the listener
+    private ParseListener handler; // receives the parse events, an AstBuilder unless the caller gave its own
+    private AstBuilder treeBuilder;
+    private TokenBuffer tokens; // null unless the cursor walks a buffer, lazy bodies need one
+    private int firstToken; // buffer index the cursor started at
+    private boolean lazyBodies;
+    private int formStart; // buffer index of the ( opening the current top-level form
+    private IdentifierIndex identifiers; // null unless the caller wants identifier positions
+    private final ParseListener.Locator locator = new ParseListener.Locator() {
+        @Override
+        public int getLineNumber() {
+            return cursor.lineNumber();
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return cursor.columnNumber();
+        }
+    };
 
     public Parser(List<Lexeme> lexemes) {
-        this.lexemes = lexemes;
-        this.currentIndex = 0;
+        this(TokenCursor.of(lexemes));
+    }
+
+    public Parser(List<Lexeme> lexemes, SymbolTable symbols) { // lexemes must have been interned into the same table
+        this(TokenCursor.of(lexemes));
+        this.symbols = symbols;
+    }
+
+    public Parser(TokenBuffer tokens) { // parse straight from the compact buffer, no Lexeme objects
+        this(tokens.cursor());
+        this.symbols = tokens.getSymbolTable();
+        this.tokens = tokens;
+    }
+
+    public Parser(TokenCursor cursor) {
+        this.cursor = cursor;
+    }
+
+    Parser(TokenBuffer tokens, int firstToken) { // parse from the middle of a buffer, for callers that split the input
+        this(tokens.cursor(firstToken));
+        this.symbols = tokens.getSymbolTable();
+        this.tokens = tokens;
+        this.firstToken = firstToken;
+    }
+
+    public void reset(List<Lexeme> lexemes) {
+        reset(TokenCursor.of(lexemes));
+    }
+
+    public void reset(TokenBuffer tokens) {
+        reset(tokens.cursor());
+        this.symbols = tokens.getSymbolTable();
+        this.tokens = tokens;
+    }
+
+    public void reset(TokenCursor cursor) { // parse another input with this parser, dropping the previous AST
+        this.cursor = cursor;
+        this.symbols = null;
+        this.tokens = null;
+        this.firstToken = 0;
+        this.position = 0;
+        this.ast = null;
+        this.depth = 0;
+        this.diagnostics = null;
+        this.nesting = 0;
+    }
+
+    private void enterNode(NodeKind kind) {
+        handler.enterNode(kind);
+    }
+
+    private void leaf(NodeKind kind) { // the current token as an Identifier or Literal
+        handler.leaf(kind, cursor.token(), cursor.value(), cursor.symbol());
+    }
+
+    private void start(ParseListener handler) {
+        this.handler = handler;
+        metrics = listener;
+        handler.setLocator(locator);
+    }
+
+    private Token getCurrentToken() {
+        return cursor.token();
+    }
+
+    private void nextToken() {
+        if (diagnostics != null) {
+            lastLineNumber = cursor.lineNumber();
+            lastColumnNumber = cursor.columnNumber();
+        }
+        cursor.advance();
+        position++;
+        if (diagnostics != null) {
+            skipInvalid();
+        }
+    }
+
+    private void skipInvalid() { // the lexer already reported these
+        while (getCurrentToken() == Token.INVALID) {
+            cursor.advance();
+            position++;
+        }
+    }
+
+    public void setLazyBodies(boolean lazyBodies) { // function bodies become LazyStatements, parsed on first access; only when parsing a TokenBuffer without recovery
+        this.lazyBodies = lazyBodies;
+    }
+
+    public void setIdentifierIndex(IdentifierIndex identifiers) { // filled while parsing; bodies are never left lazy while it is set
+        this.identifiers = identifiers;
+    }
+
+    public IdentifierIndex getIdentifierIndex() {
+        return identifiers;
+    }
+
+    private void index(IdentifierIndex.Role role) { // record the current token before it is consumed, if it is an identifier
+        if (identifiers != null && getCurrentToken() == Token.IDENTIFIER) {
+            int symbol = cursor.symbol();
+            if (symbol < 0 || symbols != identifiers.getSymbolTable()) {
+                symbol = identifiers.getSymbolTable().intern(cursor.value());
+            }
+            identifiers.add(symbol, cursor.lineNumber(), cursor.columnNumber(), role);
+        }
+    }
+
+    public void setListener(AnalysisListener listener) {
+        this.listener = listener;
+    }
+
+    private long enter(String production) {
+        if (metrics == null) {
+            return 0;
+        }
+        metrics.productionEntered(production, ++nesting);
+        return System.nanoTime();
+    }
+
+    private void exit(String production, long start) {
+        if (metrics != null) {
+            metrics.productionExited(production, System.nanoTime() - start);
+            nesting--;
+        }
+    }
+
+    int getPosition() { // number of tokens consumed so far
+        return position;
+    }
+
+    boolean hasMoreTokens() {
+        return getCurrentToken() != null;
+    }
+
+    Node parseTopLevelForm() throws ParserException { // parse exactly one form, for callers that reparse piecewise
+        AstBuilder builder = treeBuilder();
+        start(builder);
+        topLevelForm();
+        return builder.getRoot();
+    }
+
+    Node parseStatements() throws ParserException { // parse one function body, for lazy bodies being filled in
+        AstBuilder builder = treeBuilder();
+        parseStatements(builder);
+        return builder.getRoot();
     }
 
-    private Lexeme getCurrentLexeme() {
-        return currentIndex < lexemes.size() ? lexemes.get(currentIndex) : null;
+    void parseStatements(ParseListener handler) throws ParserException {
+        start(handler);
+        statements();
     }
 
-    private Lexeme getNextLexeme() {
-        currentIndex++;
-        return getCurrentLexeme();
+    private AstBuilder treeBuilder() {
+        if (treeBuilder == null) {
+            treeBuilder = new AstBuilder();
+        }
+        treeBuilder.reset(symbols);
+        return treeBuilder;
+    }
+
+    private Node builtTree() { // null when the events went to a listener that builds no Node tree
+        return handler instanceof AstBuilder ? ((AstBuilder) handler).getRoot() : null;
     }
 
     private void match(Token expectedToken) throws ParserException {
-        Lexeme current = getCurrentLexeme();
-        if (current != null && current.getToken() == expectedToken) {
-            getNextLexeme();
+        Token current = getCurrentToken();
+        if (current == expectedToken) {
+            if (current == Token.LEFTPAR) {
+                depth++;
+            } else if (current == Token.RIGHTPAR) {
+                depth--;
+            }
+            nextToken();
         } else {
-            throw new ParserException("Syntax Error: expected " + expectedToken.name() + " but found " + (current != null ? current.getToken().name() : "EOF"));
+            throw new ParserException("Syntax Error: expected " + expectedToken.name() + " but found " + (current != null ? current.name() : "EOF"));
         }
     }
 
     public void parse() throws ParserException {
-        ast = program();
-        if (getCurrentLexeme() != null) {
-            throw new ParserException("Syntax Error: unexpected token " + getCurrentLexeme().getToken().name());
+        parse(treeBuilder());
+    }
+
+    public void parse(ParseListener handler) throws ParserException { // same grammar and errors, the listener decides what gets built
+        start(handler);
+        long allocatedBefore = metrics != null ? AnalysisListener.allocatedBytes() : 0;
+        long start = metrics != null ? System.nanoTime() : 0;
+        program();
+        ast = builtTree();
+        if (metrics != null) {
+            metrics.sourceParsed(ast, System.nanoTime() - start, AnalysisListener.allocatedBytes() - allocatedBefore);
+        }
+        if (getCurrentToken() != null) {
+            throw new ParserException("Syntax Error: unexpected token " + getCurrentToken().name());
         }
     }
 
+    public List<Diagnostic> parseWithRecovery() { // reports every syntax error, the AST keeps the forms that parsed
+        return parseWithRecovery(treeBuilder());
+    }
+
+    public List<Diagnostic> parseWithRecovery(ParseListener handler) {
+        start(handler);
+        long allocatedBefore = metrics != null ? AnalysisListener.allocatedBytes() : 0;
+        long start = metrics != null ? System.nanoTime() : 0;
+        diagnostics = new ArrayList<>();
+        skipInvalid();
+        enterNode(NodeKind.PROGRAM);
+        boolean insideForm = false;
+        while (getCurrentToken() != null) {
+            int indexed = identifiers != null ? identifiers.size() : 0;
+            try {
+                if (insideForm) {
+                    topLevelFormRest();
+                } else {
+                    topLevelForm();
+                }
+                insideForm = false;
+            } catch (ParserException e) {
+                Diagnostic diagnostic;
+                if (getCurrentToken() != null) {
+                    diagnostic = new Diagnostic(e.getMessage(), cursor.lineNumber(), cursor.columnNumber());
+                } else {
+                    diagnostic = new Diagnostic(e.getMessage(), lastLineNumber, lastColumnNumber);
+                }
+                diagnostics.add(diagnostic);
+                handler.syntaxError(diagnostic);
+                if (identifiers != null) { // the broken form is dropped from the index as it is from the tree
+                    identifiers.truncate(indexed);
+                }
+                insideForm = resynchronize();
+            }
+        }
+        handler.exitNode(NodeKind.PROGRAM);
+        ast = builtTree();
+        if (metrics != null) {
+            metrics.sourceParsed(ast, System.nanoTime() - start, AnalysisListener.allocatedBytes() - allocatedBefore);
+        }
+        return diagnostics;
+    }
+
+    private boolean resynchronize() { // skip to the RIGHTPAR closing the broken form, true if a new "(define" was entered instead
+        if (depth == 0) { // the form never opened, drop tokens up to the next (
+            while (getCurrentToken() != null && getCurrentToken() != Token.LEFTPAR) {
+                nextToken();
+            }
+            return false;
+        }
+        while (getCurrentToken() != null) {
+            Token current = getCurrentToken();
+            nextToken();
+            if (current == Token.LEFTPAR) {
+                if (getCurrentToken() == Token.DEFINE) { // definitions only appear at the top level
+                    depth = 1;
+                    return true;
+                }
+                depth++;
+            } else if (current == Token.RIGHTPAR && --depth == 0) {
+                return false;
+            }
+        }
+        depth = 0;
+        return false;
+    }
+
     public Node getAST() {
         return ast;
     }
 
-    private Node program() throws ParserException {
-        Node programNode = new Node("Program");
+    private void program() throws ParserException {
+        enterNode(NodeKind.PROGRAM);
 
-        while (getCurrentLexeme() != null) {
-            programNode.addChild(topLevelForm());
+        while (getCurrentToken() != null) {
+            topLevelForm();
         }
 
-        return programNode;
+        handler.exitNode(NodeKind.PROGRAM);
     }
 
-    private Node topLevelForm() throws ParserException {
+    private void topLevelForm() throws ParserException {
+        formStart = firstToken + position;
         match(Token.LEFTPAR);
-        Node topLevelFormNode = new Node("TopLevelForm");
-        topLevelFormNode.addChild(secondLevelForm());
-        match(Token.RIGHTPAR);
-        return topLevelFormNode;
-    }
-
-    private Node secondLevelForm() throws ParserException {
-        Lexeme current = getCurrentLexeme();
-        if (current != null && current.getToken() == Token.DEFINE) {
-            return definition();
-        } else if (current != null && current.getToken() == Token.LEFTPAR) {
-            return funCall();
+        topLevelFormRest();
+    }
+
+    private void topLevelFormRest() throws ParserException {
+        long start = enter("topLevelForm");
+        try {
+            enterNode(NodeKind.TOP_LEVEL_FORM);
+            secondLevelForm();
+            match(Token.RIGHTPAR);
+            handler.exitNode(NodeKind.TOP_LEVEL_FORM);
+        } finally {
+            exit("topLevelForm", start);
+        }
+    }
+
+    private void secondLevelForm() throws ParserException {
+        Token current = getCurrentToken();
+        if (current == Token.DEFINE) {
+            definition();
+        } else if (current == Token.LEFTPAR) {
+            funCall();
         } else {
-            throw new ParserException("Syntax Error: expected DEFINE or ( but found " + (current != null ? current.getToken().name() : "EOF"));
+            throw new ParserException("Syntax Error: expected DEFINE or ( but found " + (current != null ? current.name() : "EOF"));
         }
     }
 
-    private Node definition() throws ParserException {
+    private void definition() throws ParserException {
         match(Token.DEFINE);
-        return definitionRight();
-    }
-
-    private Node definitionRight() throws ParserException {
-        Lexeme current = getCurrentLexeme();
-        if (current != null && current.getToken() == Token.IDENTIFIER) {
-            Node identifierNode = new Node("Identifier", current.getValue());
-            getNextLexeme();
-            Node expressionNode = expression();
-            Node definitionRightNode = new Node("DefinitionRight");
-            definitionRightNode.addChild(identifierNode);
-            definitionRightNode.addChild(expressionNode);
-            return definitionRightNode;
-        } else if (current != null && current.getToken() == Token.LEFTPAR) {
-            match(Token.LEFTPAR);
-            match(Token.IDENTIFIER);
-            Node argListNode = argList();
-            match(Token.RIGHTPAR);
-            Node statementsNode = statements();
-            Node definitionRightNode = new Node("DefinitionRight");
-            definitionRightNode.addChild(argListNode);
-            definitionRightNode.addChild(statementsNode);
-            return definitionRightNode;
-        } else {
-            throw new ParserException("Syntax Error: expected IDENTIFIER or ( but found " + (current != null ? current.getToken().name() : "EOF"));
+        definitionRight();
+    }
+
+    private void definitionRight() throws ParserException {
+        long start = enter("definitionRight");
+        try {
+            Token current = getCurrentToken();
+            if (current == Token.IDENTIFIER) {
+                enterNode(NodeKind.DEFINITION_RIGHT);
+                leaf(NodeKind.IDENTIFIER);
+                index(IdentifierIndex.Role.DEFINITION);
+                nextToken();
+                expression();
+                handler.exitNode(NodeKind.DEFINITION_RIGHT);
+            } else if (current == Token.LEFTPAR) {
+                enterNode(NodeKind.DEFINITION_RIGHT);
+                match(Token.LEFTPAR);
+                index(IdentifierIndex.Role.DEFINITION);
+                match(Token.IDENTIFIER);
+                argList();
+                match(Token.RIGHTPAR);
+                if (!skipBody()) {
+                    statements();
+                }
+                handler.exitNode(NodeKind.DEFINITION_RIGHT);
+            } else {
+                throw new ParserException("Syntax Error: expected IDENTIFIER or ( but found " + (current != null ? current.name() : "EOF"));
+            }
+        } finally {
+            exit("definitionRight", start);
         }
     }
 
-    private Node argList() throws ParserException {
-        Lexeme current = getCurrentLexeme();
-        if (current != null && current.getToken() == Token.IDENTIFIER) {
-            Node identifierNode = new Node("Identifier", current.getValue());
-            getNextLexeme();
-            Node argListNode = argList();
-            argListNode.addChild(identifierNode);
-            return argListNode;
-        } else if (current != null && current.getToken() != Token.RIGHTPAR) {
-            throw new ParserException("Syntax Error: expected IDENTIFIER or ) but found " + (current != null ? current.getToken().name() : "EOF"));
-        } else {
-            return new Node("ArgList");
+    private boolean skipBody() { // jump to the ) closing the definition, true if the body was left for later
+        if (!lazyBodies || tokens == null || diagnostics != null || identifiers != null) { // recovery can enter a form without topLevelForm, the index needs every body
+            return false;
         }
+        int end = tokens.getMatch(formStart);
+        if (end < 0) { // never closes, the eager parse reports where it breaks
+            return false;
+        }
+        int bodyStart = firstToken + position;
+        handler.bodySkipped(tokens, bodyStart, end);
+        cursor.skip(end - bodyStart);
+        position += end - bodyStart;
+        return true;
     }
 
-    private Node statements() throws ParserException {
-        Node statementsNode = new Node("Statements");
+    private void argList() throws ParserException {
+        enterNode(NodeKind.ARG_LIST);
+        while (getCurrentToken() == Token.IDENTIFIER) {
+            leaf(NodeKind.IDENTIFIER);
+            index(IdentifierIndex.Role.PARAMETER);
+            nextToken();
+        }
+        Token current = getCurrentToken();
+        if (current != null && current != Token.RIGHTPAR) {
+            throw new ParserException("Syntax Error: expected IDENTIFIER or ) but found " + current.name());
+        }
+        handler.exitNode(NodeKind.ARG_LIST);
+    }
 
-        while (getCurrentLexeme() != null && getCurrentLexeme().getToken() != Token.RIGHTPAR) {
-            statementsNode.addChild(expression());
+    private void statements() throws ParserException {
+        long start = enter("statements");
+        try {
+            enterNode(NodeKind.STATEMENTS);
+
+            while (getCurrentToken() != null && getCurrentToken() != Token.RIGHTPAR) {
+                expression();
+            }
+
+            handler.exitNode(NodeKind.STATEMENTS);
+        } finally {
+            exit("statements", start);
         }
+    }
 
-        return statementsNode;
+    private void expression() throws ParserException {
+        long start = enter("expression");
+        try {
+            Token current = getCurrentToken();
+            if (current != null && (current.isLiteral() || current == Token.IDENTIFIER)) {
+                leaf(NodeKind.LITERAL);
+                index(IdentifierIndex.Role.REFERENCE);
+                nextToken();
+            } else if (current == Token.LEFTPAR) {
+                match(Token.LEFTPAR);
+                expr();
+                match(Token.RIGHTPAR);
+            } else {
+                throw new ParserException("Syntax Error: unexpected token " + (current != null ? current.name() : "EOF"));
+            }
+        } finally {
+            exit("expression", start);
+        }
     }
 
-    private Node expression() throws ParserException {
-        Lexeme current = getCurrentLexeme();
-        if (current != null && (current.getToken().isLiteral() || current.getToken() == Token.IDENTIFIER)) {
-            Node literalNode = new Node("Literal", current.getValue());
-            getNextLexeme();
-            return literalNode;
-        } else if (current != null && current.getToken() == Token.LEFTPAR) {
-            match(Token.LEFTPAR);
-            Node exprNode = expr();
-            match(Token.RIGHTPAR);
-            return exprNode;
-        } else {
-            throw new ParserException("Syntax Error: unexpected token " + (current != null ? current.getToken().name() : "EOF"));
-        }
-    }
-
-    private Node expr() throws ParserException {
-        Lexeme current = getCurrentLexeme();
-        if (current != null && current.getToken() == Token.LET) {
-            return letExpression();
-        } else if (current != null && current.getToken() == Token.COND) {
-            return condExpression();
-        } else if (current != null && current.getToken() == Token.IF) {
-            return ifExpression();
-        } else if (current != null && current.getToken() == Token.BEGIN) {
-            return beginExpression();
-        } else if (current != null && current.getToken() == Token.IDENTIFIER) {
-            return funCall();
+    private void expr() throws ParserException {
+        Token current = getCurrentToken();
+        if (current == Token.LET) {
+            letExpression();
+        } else if (current == Token.COND) {
+            condExpression();
+        } else if (current == Token.IF) {
+            ifExpression();
+        } else if (current == Token.BEGIN) {
+            beginExpression();
+        } else if (current == Token.IDENTIFIER) {
+            funCall();
         } else {
-            throw new ParserException("Syntax Error: unexpected token " + (current != null ? current.getToken().name() : "EOF"));
+            throw new ParserException("Syntax Error: unexpected token " + (current != null ? current.name() : "EOF"));
         }
     }
 
-    private Node funCall() throws ParserException {
-        match(Token.IDENTIFIER);
-        Node funCallNode = new Node("FunCall");
-        funCallNode.addChild(new Node("Identifier", getCurrentLexeme().getValue()));
-        expressions(funCallNode);
-        return funCallNode;
+    private void funCall() throws ParserException {
+        long start = enter("funCall");
+        try {
+            enterNode(NodeKind.FUN_CALL);
+            index(IdentifierIndex.Role.CALL);
+            match(Token.IDENTIFIER);
+            leaf(NodeKind.IDENTIFIER);
+            expressions();
+            handler.exitNode(NodeKind.FUN_CALL);
+        } finally {
+            exit("funCall", start);
+        }
     }
 
-    private void expressions(Node parentNode) throws ParserException {
-        if (getCurrentLexeme() != null && (getCurrentLexeme().getToken().isLiteral() || getCurrentLexeme().getToken() == Token.IDENTIFIER || getCurrentLexeme().getToken() == Token.LEFTPAR)) {
-            parentNode.addChild(expression());
-            expressions(parentNode);
+    private void expressions() throws ParserException {
+        Token current = getCurrentToken();
+        while (current != null && (current.isLiteral() || current == Token.IDENTIFIER || current == Token.LEFTPAR)) {
+            expression();
+            current = getCurrentToken();
         }
     }
 
-    private Node letExpression() throws ParserException {
+    private void letExpression() throws ParserException {
         match(Token.LET);
-        return letExpr();
+        letExpr();
     }
 
-    private Node letExpr() throws ParserException {
-        Lexeme current = getCurrentLexeme();
-        if (current != null && current.getToken() == Token.LEFTPAR) {
-            match(Token.LEFTPAR);
-            Node varDefsNode = varDefs();
-            match(Token.RIGHTPAR);
-            Node statementsNode = statements();
-            Node letExprNode = new Node("LetExpr");
-            letExprNode.addChild(varDefsNode);
-            letExprNode.addChild(statementsNode);
-            return letExprNode;
-        } else if (current != null && current.getToken() == Token.IDENTIFIER) {
-            match(Token.IDENTIFIER);
-            match(Token.LEFTPAR);
-            Node varDefsNode = varDefs();
-            match(Token.RIGHTPAR);
-            Node statementsNode = statements();
-            Node letExprNode = new Node("LetExpr");
-            letExprNode.addChild(new Node("Identifier", current.getValue()));
-            letExprNode.addChild(varDefsNode);
-            letExprNode.addChild(statementsNode);
-            return letExprNode;
-        } else {
-            throw new ParserException("Syntax Error: expected ( or IDENTIFIER but found " + (current != null ? current.getToken().name() : "EOF"));
+    private void letExpr() throws ParserException {
+        long start = enter("letExpr");
+        try {
+            Token current = getCurrentToken();
+            if (current == Token.LEFTPAR) {
+                enterNode(NodeKind.LET_EXPR);
+                match(Token.LEFTPAR);
+                varDefs();
+                match(Token.RIGHTPAR);
+                statements();
+                handler.exitNode(NodeKind.LET_EXPR);
+            } else if (current == Token.IDENTIFIER) {
+                enterNode(NodeKind.LET_EXPR);
+                leaf(NodeKind.IDENTIFIER);
+                index(IdentifierIndex.Role.DEFINITION);
+                match(Token.IDENTIFIER);
+                match(Token.LEFTPAR);
+                varDefs();
+                match(Token.RIGHTPAR);
+                statements();
+                handler.exitNode(NodeKind.LET_EXPR);
+            } else {
+                throw new ParserException("Syntax Error: expected ( or IDENTIFIER but found " + (current != null ? current.name() : "EOF"));
+            }
+        } finally {
+            exit("letExpr", start);
         }
     }
 
-    private Node varDefs() throws ParserException {
-        Lexeme current = getCurrentLexeme();
-        if (current != null && current.getToken() == Token.LEFTPAR) {
+    private void varDefs() throws ParserException {
+        Token current = getCurrentToken();
+        if (current != null && current != Token.LEFTPAR && current != Token.RIGHTPAR) {
+            throw new ParserException("Syntax Error: expected ( or ) but found " + current.name());
+        }
+        NodeKind kind = current == Token.LEFTPAR ? NodeKind.VAR_DEF : NodeKind.VAR_DEFS; // bindings have always hung under VarDef, only an empty list is VarDefs
+        enterNode(kind);
+        while (getCurrentToken() == Token.LEFTPAR) {
             match(Token.LEFTPAR);
+            index(IdentifierIndex.Role.DEFINITION);
             match(Token.IDENTIFIER);
-            Node expressionNode = expression();
+            expression();
             match(Token.RIGHTPAR);
-            Node varDefsNode = varDef();
-            varDefsNode.addChild(expressionNode);
-            return varDefsNode;
-        } else if (current != null && current.getToken() != Token.RIGHTPAR) {
-            throw new ParserException("Syntax Error: expected ( or ) but found " + (current != null ? current.getToken().name() : "EOF"));
-        } else {
-            return new Node("VarDefs");
         }
-    }
-
-    private Node varDef() throws ParserException {
-        Lexeme current = getCurrentLexeme();
-        if (current != null && current.getToken() == Token.LEFTPAR) {
-            Node varDefsNode = varDefs();
-            return varDefsNode;
-        } else if (current != null && current.getToken() != Token.RIGHTPAR) {
-            throw new ParserException("Syntax Error: expected ( or ) but found " + (current != null ? current.getToken().name() : "EOF"));
-        } else {
-            return new Node("VarDef");
+        current = getCurrentToken();
+        if (current != null && current != Token.RIGHTPAR) {
+            throw new ParserException("Syntax Error: expected ( or ) but found " + current.name());
         }
+        handler.exitNode(kind);
     }
 
-    private Node condExpression() throws ParserException {
+    private void condExpression() throws ParserException {
         match(Token.COND);
-        return condBranches();
+        condBranches();
     }
 
-    private Node condBranches() throws ParserException {
-        Lexeme current = getCurrentLexeme();
-        if (current != null && current.getToken() == Token.LEFTPAR) {
-            match(Token.LEFTPAR);
-            Node expressionNode = expression();
-            Node statementsNode = statements();
-            match(Token.RIGHTPAR);
-            Node condBranchesNode = condBranches();
-            Node condBranchNode = new Node("CondBranch");
-            condBranchNode.addChild(expressionNode);
-            condBranchNode.addChild(statementsNode);
-            condBranchNode.addChild(condBranchesNode);
-            return condBranchNode;
-        } else if (current != null && current.getToken() != Token.RIGHTPAR) {
-            throw new ParserException("Syntax Error: expected ( or ) but found " + (current != null ? current.getToken().name() : "EOF"));
-        } else {
-            return new Node("CondBranches");
+    private void condBranches() throws ParserException {
+        long start = enter("condBranches");
+        try {
+            Token current = getCurrentToken();
+            if (current == Token.LEFTPAR) {
+                enterNode(NodeKind.COND_BRANCH);
+                match(Token.LEFTPAR);
+                expression();
+                statements();
+                match(Token.RIGHTPAR);
+                condBranches();
+                handler.exitNode(NodeKind.COND_BRANCH);
+            } else if (current != null && current != Token.RIGHTPAR) {
+                throw new ParserException("Syntax Error: expected ( or ) but found " + current.name());
+            } else {
+                enterNode(NodeKind.COND_BRANCHES);
+                handler.exitNode(NodeKind.COND_BRANCHES);
+            }
+        } finally {
+            exit("condBranches", start);
         }
     }
 
-    private Node ifExpression() throws ParserException {
-        match(Token.IF);
-        Node ifExpressionNode = new Node("IfExpression");
-        ifExpressionNode.addChild(expression());
-        ifExpressionNode.addChild(expression());
-        if (getCurrentLexeme() != null && getCurrentLexeme().getToken() != Token.RIGHTPAR) {
-            ifExpressionNode.addChild(expression());
+    private void ifExpression() throws ParserException {
+        long start = enter("ifExpression");
+        try {
+            enterNode(NodeKind.IF_EXPRESSION);
+            match(Token.IF);
+            expression();
+            expression();
+            if (getCurrentToken() != null && getCurrentToken() != Token.RIGHTPAR) {
+                expression();
+            }
+            handler.exitNode(NodeKind.IF_EXPRESSION);
+        } finally {
+            exit("ifExpression", start);
         }
-        return ifExpressionNode;
     }
 
-    private Node beginExpression() throws ParserException {
-        match(Token.BEGIN);
-        Node beginExpressionNode = new Node("BeginExpression");
-        beginExpressionNode.addChild(statements());
-        return beginExpressionNode;
+    private void beginExpression() throws ParserException {
+        long start = enter("beginExpression");
+        try {
+            enterNode(NodeKind.BEGIN_EXPRESSION);
+            match(Token.BEGIN);
+            statements();
+            handler.exitNode(NodeKind.BEGIN_EXPRESSION);
+        } finally {
+            exit("beginExpression", start);
+        }
     }
 
     public static class ParserException extends Exception {
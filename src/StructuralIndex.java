@@ -0,0 +1,131 @@
+import java.util.Arrays;
+
+public class StructuralIndex { // where identifier and number bodies end, one bit per char in 64-char words
+    static final int WHITESPACE = 1;
+    static final int DELIMITER = 2; // ends an identifier, number or hash literal
+    static final int LETTER = 4;
+    static final int DIGIT = 8;
+    static final int STARTS_TOKEN = 16; // the automaton's start state answers with a token, not NONE
+    private static final byte[] FLAGS = new byte[Character.MAX_VALUE + 1];
+    private static final int BLOCK = 64;
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) { // same precedence as the automaton's char classes
+            char ch = (char) c;
+            int flags = 0;
+            if (Character.isWhitespace(ch)) {
+                flags |= WHITESPACE;
+            }
+            if (Automaton.isDelimiter(ch)) {
+                flags |= DELIMITER;
+            }
+            if (Character.isLetter(ch)) {
+                flags |= LETTER;
+            } else if (Character.isDigit(ch)) {
+                flags |= DIGIT;
+            }
+            if ((flags & (LETTER | DIGIT)) != 0 || ch == '(' || ch == ')' || ch == '[' || ch == ']' || ch == '"' || ch == '#' || ch == ';') {
+                flags |= STARTS_TOKEN;
+            }
+            FLAGS[c] = (byte) flags;
+        }
+    }
+
+    private final char[] block = new char[BLOCK];
+    private long[] delimiters = new long[16];
+    private long[] digits = new long[16];
+    private CharSequence text;
+    private int from;
+    private int to;
+    private int words;
+    private int[] stamps = new int[16]; // a word is classified for this range when its stamp equals the generation
+    private int generation;
+
+    static int flags(char c) {
+        return FLAGS[c];
+    }
+
+    public void index(CharSequence text, int from, int to) { // covers [from, to), replacing what was indexed before
+        this.text = text;
+        this.from = from;
+        this.to = to;
+        this.words = (to - from + BLOCK - 1) / BLOCK;
+        if (++generation == 0) { // wrapped around, old stamps could look current
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+        if (words > delimiters.length) {
+            int capacity = Math.max(words, delimiters.length * 2);
+            delimiters = Arrays.copyOf(delimiters, capacity);
+            digits = Arrays.copyOf(digits, capacity);
+            stamps = Arrays.copyOf(stamps, capacity);
+        }
+    }
+
+    public void release() { // drop the text so an idle index doesn't keep it reachable
+        text = null;
+    }
+
+    public int nextDelimiter(int offset) { // first delimiter at or after the offset, the end of the range if none
+        if (offset >= to) {
+            return to;
+        }
+        int index = offset - from;
+        int word = index / BLOCK;
+        long current = classify(word) & (-1L << index);
+        while (current == 0) {
+            if (++word == words) {
+                return to;
+            }
+            current = classify(word);
+        }
+        return from + word * BLOCK + Long.numberOfTrailingZeros(current);
+    }
+
+    public boolean hasDigit(int start, int end) { // any digit in [start, end)
+        if (start >= end) {
+            return false;
+        }
+        int first = (start - from) / BLOCK;
+        int last = (end - 1 - from) / BLOCK;
+        for (int word = first; word <= last; word++) {
+            classify(word);
+            long mask = -1L;
+            if (word == first) {
+                mask &= -1L << (start - from);
+            }
+            if (word == last) {
+                mask &= -1L >>> (BLOCK - 1 - ((end - 1 - from) & (BLOCK - 1)));
+            }
+            if ((digits[word] & mask) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long classify(int word) { // the delimiter bits of the word, classified on first use so skipped text costs nothing
+        if (stamps[word] != generation) {
+            int start = from + word * BLOCK;
+            int length = Math.min(BLOCK, to - start);
+            if (text instanceof String) { // one bulk copy instead of a call per char
+                ((String) text).getChars(start, start + length, block, 0);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    block[i] = text.charAt(start + i);
+                }
+            }
+            long delimiterBits = 0;
+            long digitBits = 0;
+            for (int i = 0; i < length; i++) { // no branches, every char costs the same
+                int flags = FLAGS[block[i]];
+                delimiterBits |= (long) ((flags & DELIMITER) >>> 1) << i;
+                digitBits |= (long) ((flags & DIGIT) >>> 3) << i;
+            }
+            delimiters[word] = delimiterBits;
+            digits[word] = digitBits;
+            stamps[word] = generation;
+        }
+        return delimiters[word];
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.Arrays;
+
+public class SymbolTable {
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public SymbolTable() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private static class Stripe { // one lock per stripe, names are published through the volatile array
+        private volatile String[] names = new String[16];
+        private int[] hashes = new int[16];
+        private int[] slots = new int[32]; // local index + 1, 0 marks an empty slot
+        private int count;
+
+        synchronized int intern(CharSequence text, int start, int end, int hash) {
+            int found = find(text, start, end, hash);
+            if (found >= 0) {
+                return found;
+            }
+
+            String[] current = names;
+            int local = count;
+            if (local == current.length) {
+                current = Arrays.copyOf(current, local * 2);
+                hashes = Arrays.copyOf(hashes, local * 2);
+            }
+            current[local] = text.subSequence(start, end).toString();
+            hashes[local] = hash;
+            count++;
+            names = current;
+            if (count * 2 > slots.length) {
+                rehash();
+            } else {
+                insert(slots, local, hash);
+            }
+            return local;
+        }
+
+        synchronized int find(CharSequence text, int start, int end, int hash) { // local index, -1 if never interned
+            int mask = slots.length - 1;
+            String[] current = names;
+            for (int slot = hash & mask; ; slot = (slot + 1) & mask) { // linear probing
+                int entry = slots[slot];
+                if (entry == 0) {
+                    return -1;
+                }
+                int local = entry - 1;
+                if (hashes[local] == hash && contentEquals(current[local], text, start, end)) {
+                    return local;
+                }
+            }
+        }
+
+        private void rehash() {
+            int[] grown = new int[slots.length * 2];
+            for (int local = 0; local < count; local++) {
+                insert(grown, local, hashes[local]);
+            }
+            slots = grown;
+        }
+
+        private static void insert(int[] table, int local, int hash) {
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = local + 1;
+        }
+
+        synchronized int size() {
+            return count;
+        }
+    }
+
+    public int intern(String text) {
+        return intern(text, 0, text.length());
+    }
+
+    public int intern(CharSequence text, int start, int end) { // same text always gets the same id
+        int hash = hash(text, start, end);
+        int stripe = hash & (STRIPES - 1);
+        int local = stripes[stripe].intern(text, start, end, hash >>> STRIPE_BITS);
+        return (local << STRIPE_BITS) | stripe;
+    }
+
+    public int find(String text) { // the id intern would return, -1 instead of adding a name that was never seen
+        int hash = hash(text, 0, text.length());
+        int stripe = hash & (STRIPES - 1);
+        int local = stripes[stripe].find(text, 0, text.length(), hash >>> STRIPE_BITS);
+        return local >= 0 ? (local << STRIPE_BITS) | stripe : -1;
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) { // String.hashCode over the range, without building the String
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash ^ hash >>> 16;
+    }
+
+    public String name(int symbol) {
+        return stripes[symbol & (STRIPES - 1)].names[symbol >>> STRIPE_BITS];
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    private static boolean contentEquals(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
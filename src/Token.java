@@ -2,7 +2,8 @@ public enum Token {
     LEFTPAR, RIGHTPAR, LEFTSQUAREB, RIGHTSQUAREB, LEFTCURLYB, RIGHTCURLYB,
     NUMBER, BOOLEAN, CHAR, STRING,
     DEFINE, LET, COND, IF, BEGIN,
-    IDENTIFIER, NONE, INVALID;
+    IDENTIFIER, NONE, INVALID,
+    COMMENT; // only signalled by the automaton, never emitted
 
     public boolean isLiteral() {
         return this == NUMBER || this == BOOLEAN || this == CHAR || this == STRING;
@@ -0,0 +1,207 @@
+import java.nio.CharBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+public class TokenBuffer {
+    private static final Token[] TOKENS = Token.values();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private CharSequence source;
+    private final SymbolTable symbols;
+    private byte[] tokens;  // parallel arrays, one slot per lexeme
+    private int[] starts;
+    private int[] lengths;
+    private final LineIndex lines = new LineIndex(); // positions are derived from the start offsets on demand
+    private int[] symbolIds;
+    private int[] matches; // index of the paren pairing with this one, -1 if none
+    private int[] openParens = new int[16]; // LEFTPARs still waiting for their RIGHTPAR
+    private int openCount;
+    private int size;
+
+    public TokenBuffer(CharSequence source) {
+        this(source, null);
+    }
+
+    public TokenBuffer(CharSequence source, SymbolTable symbols) { // identifiers are interned when a table is given
+        this.source = source;
+        this.symbols = symbols;
+        this.tokens = new byte[INITIAL_CAPACITY];
+        this.starts = new int[INITIAL_CAPACITY];
+        this.lengths = new int[INITIAL_CAPACITY];
+        this.symbolIds = new int[INITIAL_CAPACITY];
+        this.matches = new int[INITIAL_CAPACITY];
+    }
+
+    public void startLine(int lineNumber, int lineStart) { // called by the lexer before the line's tokens are added
+        lines.add(lineNumber, lineStart);
+    }
+
+    public void add(Token token, int start, int end) {
+        if (size == tokens.length) {
+            grow();
+        }
+        tokens[size] = (byte) token.ordinal();
+        starts[size] = start;
+        lengths[size] = end - start;
+        symbolIds[size] = symbols != null && token == Token.IDENTIFIER ? symbols.intern(source, start, end) : -1;
+        matches[size] = -1;
+        if (token == Token.LEFTPAR) {
+            if (openCount == openParens.length) {
+                openParens = Arrays.copyOf(openParens, openCount * 2);
+            }
+            openParens[openCount++] = size;
+        } else if (token == Token.RIGHTPAR && openCount > 0) { // pairs are known as soon as the form closes
+            int open = openParens[--openCount];
+            matches[open] = size;
+            matches[size] = open;
+        }
+        size++;
+    }
+
+    private void grow() {
+        int capacity = tokens.length * 2;
+        tokens = Arrays.copyOf(tokens, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        symbolIds = Arrays.copyOf(symbolIds, capacity);
+        matches = Arrays.copyOf(matches, capacity);
+    }
+
+    public void clear() {
+        size = 0;
+        openCount = 0;
+        lines.clear();
+    }
+
+    public void reset(CharSequence source) { // reuse the arrays for another source
+        this.source = source;
+        size = 0;
+        openCount = 0;
+        lines.clear();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public Token getToken(int index) {
+        return TOKENS[tokens[index]];
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    public int getLineNumber(int index) {
+        return lines.lineNumber(starts[index]);
+    }
+
+    public int getColumnNumber(int index) {
+        return lines.columnNumber(starts[index]);
+    }
+
+    public LineIndex getLineIndex() {
+        return lines;
+    }
+
+    public int getMatch(int index) { // the paren pairing with this one, so a whole form can be stepped over; -1 if unmatched or not a paren
+        return matches[index];
+    }
+
+    public int getSymbol(int index) {
+        return symbolIds[index];
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public CharSequence getText(int index) { // view into the source, nothing is copied
+        return CharBuffer.wrap(source, starts[index], starts[index] + lengths[index]);
+    }
+
+    public String getValue(int index) {
+        if (symbolIds[index] >= 0) {
+            return symbols.name(symbolIds[index]);
+        }
+        return source.subSequence(starts[index], starts[index] + lengths[index]).toString();
+    }
+
+    public Lexeme getLexeme(int index) {
+        if (symbolIds[index] >= 0) {
+            return new Lexeme(getToken(index), symbols, symbolIds[index], getLineNumber(index), getColumnNumber(index));
+        }
+        return new Lexeme(getToken(index), source, starts[index], starts[index] + lengths[index], getLineNumber(index), getColumnNumber(index));
+    }
+
+    public List<Lexeme> asLexemes() { // adapter for the List<Lexeme> API, lexemes are built on access
+        return new AbstractList<Lexeme>() {
+            @Override
+            public Lexeme get(int index) {
+                if (index >= size) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+                }
+                return getLexeme(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public TokenCursor cursor() {
+        return cursor(0);
+    }
+
+    public TokenCursor cursor(int firstToken) { // starts at the given token instead of the first
+        return new TokenCursor() {
+            private int index = firstToken;
+
+            @Override
+            public Token token() {
+                return index < size ? TOKENS[tokens[index]] : null;
+            }
+
+            @Override
+            public String value() {
+                return index < size ? getValue(index) : null;
+            }
+
+            @Override
+            public int lineNumber() {
+                return index < size ? getLineNumber(index) : 0;
+            }
+
+            @Override
+            public int columnNumber() {
+                return index < size ? getColumnNumber(index) : 0;
+            }
+
+            @Override
+            public void advance() {
+                index++;
+            }
+
+            @Override
+            public void skip(int count) {
+                index += count;
+            }
+
+            @Override
+            public int symbol() {
+                return index < size ? symbolIds[index] : -1;
+            }
+        };
+    }
+}
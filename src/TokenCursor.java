@@ -0,0 +1,68 @@
+import java.util.List;
+
+public interface TokenCursor {
+    Token token(); // null once the input is exhausted
+
+    String value();
+
+    int lineNumber();
+
+    int columnNumber();
+
+    void advance();
+
+    default void skip(int count) { // advance past count tokens at once, cursors with random access do it in one step
+        for (int i = 0; i < count; i++) {
+            advance();
+        }
+    }
+
+    default int symbol() { // interned id of the current identifier, -1 if it has none
+        return -1;
+    }
+
+    static TokenCursor of(List<Lexeme> lexemes) {
+        return new TokenCursor() {
+            private int index;
+
+            private Lexeme current() {
+                return index < lexemes.size() ? lexemes.get(index) : null;
+            }
+
+            @Override
+            public Token token() {
+                Lexeme current = current();
+                return current != null ? current.getToken() : null;
+            }
+
+            @Override
+            public String value() {
+                Lexeme current = current();
+                return current != null ? current.getValue() : null;
+            }
+
+            @Override
+            public int lineNumber() {
+                Lexeme current = current();
+                return current != null ? current.getLineNumber() : 0;
+            }
+
+            @Override
+            public int columnNumber() {
+                Lexeme current = current();
+                return current != null ? current.getColumnNumber() : 0;
+            }
+
+            @Override
+            public void advance() {
+                index++;
+            }
+
+            @Override
+            public int symbol() {
+                Lexeme current = current();
+                return current != null ? current.getSymbol() : -1;
+            }
+        };
+    }
+}
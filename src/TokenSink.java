@@ -0,0 +1,3 @@
+interface TokenSink {
+    void accept(Token token, int start, int end, int lineNumber, int columnNumber);
+}